@@ -117,7 +117,10 @@ public class PantsManager implements
             pantsProjectSettings.getProjectName(),
             pantsProjectSettings.getSelectedTargetSpecs(),
             pantsProjectSettings.libsWithSources,
-            pantsProjectSettings.importSourceDepsAsJars
+            pantsProjectSettings.importSourceDepsAsJars,
+            pantsProjectSettings.useExportCache,
+            pantsProjectSettings.parallelResolve,
+            pantsProjectSettings.exportShards
           );
         }
         else {
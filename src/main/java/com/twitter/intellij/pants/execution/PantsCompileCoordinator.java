@@ -0,0 +1,186 @@
+// Copyright 2023 Pants project contributors (see CONTRIBUTORS.md).
+// Licensed under the Apache License, Version 2.0 (see LICENSE).
+
+package com.twitter.intellij.pants.execution;
+
+import com.google.common.base.Throwables;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.project.Project;
+import com.twitter.intellij.pants.file.FileChangeTracker;
+import com.twitter.intellij.pants.metrics.PantsExternalMetricsListenerManager;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Makes sure only one pants compile runs per project, since concurrent ones would wait for the same `.pants.d` lock anyway.
+ * <p>
+ * Requests that arrive while another compile is running are merged into a single pants invocation over the union
+ * of their targets, which starts once the running one finishes. A request whose targets are all covered by the running
+ * compile waits for its result instead, unless any of them changed after that compile started.
+ */
+public class PantsCompileCoordinator {
+  private static final Logger LOG = Logger.getInstance(PantsCompileCoordinator.class);
+  // How long a batch that already merged several requests waits for the rest of the burst before it starts.
+  private static final long MERGE_WINDOW_MILLIS = 50;
+
+  public interface Compiler {
+    @NotNull
+    PantsExecuteTaskResult compile(@NotNull Set<String> targetAddresses, boolean useCleanAll);
+  }
+
+  private static class Batch {
+    final Set<String> myTargetAddresses = new HashSet<>();
+    boolean myUseCleanAll = false;
+    int myRequestCount = 0;
+    // Modification stamp of the file change tracker when the batch started running.
+    long myStartStamp = 0;
+    final CompletableFuture<PantsExecuteTaskResult> myResult = new CompletableFuture<>();
+
+    private void add(@NotNull Set<String> targetAddresses, boolean useCleanAll) {
+      myTargetAddresses.addAll(targetAddresses);
+      myUseCleanAll |= useCleanAll;
+      myRequestCount++;
+    }
+
+    private boolean covers(@NotNull Set<String> targetAddresses, boolean useCleanAll) {
+      return (myUseCleanAll || !useCleanAll) && myTargetAddresses.containsAll(targetAddresses);
+    }
+  }
+
+  private final Project myProject;
+  // Both guarded by this.
+  @Nullable
+  private Batch myPendingBatch = null;
+  @Nullable
+  private Batch myRunningBatch = null;
+
+  public PantsCompileCoordinator(@NotNull Project project) {
+    myProject = project;
+  }
+
+  public static PantsCompileCoordinator getInstance(@NotNull Project project) {
+    return project.getService(PantsCompileCoordinator.class);
+  }
+
+  /**
+   * Blocks until a compile covering the given targets has finished.
+   *
+   * @param compiler runs pants for a merged request. Only one call runs at a time.
+   * @return the result of the compile the request was merged into.
+   */
+  @NotNull
+  public PantsExecuteTaskResult compile(@NotNull Set<String> targetAddresses, boolean useCleanAll, @NotNull Compiler compiler) {
+    final Batch runningBatch;
+    synchronized (this) {
+      runningBatch = myRunningBatch;
+    }
+    // The running compile may have read the files of the targets before they changed.
+    final boolean canJoinRunningBatch = runningBatch != null
+                                        && runningBatch.covers(targetAddresses, useCleanAll)
+                                        && !FileChangeTracker.isDirtySince(myProject, targetAddresses, runningBatch.myStartStamp);
+
+    final Batch batch;
+    final boolean isFirstRequest;
+    synchronized (this) {
+      if (canJoinRunningBatch && myRunningBatch == runningBatch) {
+        myRunningBatch.myRequestCount++;
+        batch = myRunningBatch;
+        isFirstRequest = false;
+      }
+      else if (myPendingBatch != null) {
+        myPendingBatch.add(targetAddresses, useCleanAll);
+        batch = myPendingBatch;
+        isFirstRequest = false;
+      }
+      else {
+        myPendingBatch = new Batch();
+        myPendingBatch.add(targetAddresses, useCleanAll);
+        batch = myPendingBatch;
+        isFirstRequest = true;
+      }
+    }
+
+    // The first request of a batch runs it, the others wait for its result.
+    if (isFirstRequest) {
+      run(batch, compiler);
+    }
+    try {
+      return batch.myResult.join();
+    }
+    catch (CompletionException e) {
+      Throwables.throwIfUnchecked(e.getCause());
+      throw e;
+    }
+  }
+
+  private void run(@NotNull Batch batch, @NotNull Compiler compiler) {
+    final Set<String> targetAddresses;
+    final boolean useCleanAll;
+    boolean isInterrupted = false;
+    synchronized (this) {
+      // Requests keep being merged into the pending batch while the running one finishes.
+      while (myRunningBatch != null) {
+        try {
+          wait();
+        }
+        catch (InterruptedException e) {
+          isInterrupted = true;
+        }
+      }
+      // Other requests arrived already, so more of the same burst are likely to follow shortly.
+      if (batch.myRequestCount > 1) {
+        final long deadline = System.currentTimeMillis() + MERGE_WINDOW_MILLIS;
+        for (long remaining = MERGE_WINDOW_MILLIS; remaining > 0; remaining = deadline - System.currentTimeMillis()) {
+          try {
+            wait(remaining);
+          }
+          catch (InterruptedException e) {
+            isInterrupted = true;
+            break;
+          }
+        }
+      }
+      myPendingBatch = null;
+      myRunningBatch = batch;
+      batch.myStartStamp = FileChangeTracker.getModificationStamp();
+      targetAddresses = new HashSet<>(batch.myTargetAddresses);
+      useCleanAll = batch.myUseCleanAll;
+    }
+    if (isInterrupted) {
+      Thread.currentThread().interrupt();
+    }
+
+    PantsExecuteTaskResult result = null;
+    Throwable error = null;
+    try {
+      result = compiler.compile(targetAddresses, useCleanAll);
+    }
+    catch (Throwable t) {
+      error = t;
+    }
+    finally {
+      final int requestCount;
+      // Hand over to the leader of the pending batch before waking up the requests of this one.
+      synchronized (this) {
+        myRunningBatch = null;
+        requestCount = batch.myRequestCount;
+        notifyAll();
+      }
+      if (error != null) {
+        batch.myResult.completeExceptionally(error);
+      }
+      else {
+        batch.myResult.complete(result);
+      }
+      if (requestCount > 1) {
+        LOG.info(String.format("Merged %d compile requests into one pants invocation over %d targets", requestCount, targetAddresses.size()));
+        PantsExternalMetricsListenerManager.getInstance().logMergedCompileRequests(requestCount);
+      }
+    }
+  }
+}
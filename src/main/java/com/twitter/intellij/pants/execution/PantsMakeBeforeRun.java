@@ -333,12 +333,26 @@ public class PantsMakeBeforeRun extends ExternalSystemBeforeRunTaskProvider {
       currentProject.save();
     }, ModalityState.NON_MODAL);
 
-    // If project has not changed since last Compile, return immediately.
+    // Decided before the request is merged with others, so the snapshot kept for the next check is of these targets.
     if (!FileChangeTracker.shouldRecompileThenReset(currentProject, targetAddressesToCompile)) {
       PantsExternalMetricsListenerManager.getInstance().logIsPantsNoopCompile(true);
       notify("Compile message", "Already up to date.", NotificationType.INFORMATION);
       return new PantsExecuteTaskResult(true, Optional.of(PantsConstants.NOOP_COMPILE));
     }
+    PantsExternalMetricsListenerManager.getInstance().logIsPantsNoopCompile(false);
+    return PantsCompileCoordinator.getInstance(currentProject).compile(
+      targetAddressesToCompile,
+      useCleanAll,
+      (targetAddresses, cleanAll) -> compile(currentProject, targetAddresses, cleanAll)
+    );
+  }
+
+  @NotNull
+  private PantsExecuteTaskResult compile(
+    @NotNull Project currentProject,
+    @NotNull Set<String> targetAddressesToCompile,
+    boolean useCleanAll
+  ) {
     List<String> compileTasks = Lists.newArrayList();
     if (useCleanAll) {
       compileTasks.add("clean-all");
@@ -4,39 +4,58 @@
 package com.twitter.intellij.pants.file;
 
 import com.google.common.hash.HashCode;
-import com.google.common.hash.HashFunction;
 import com.google.common.hash.Hashing;
+import com.google.common.io.MoreFiles;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.ReadAction;
 import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.module.Module;
+import com.intellij.openapi.module.ModuleManager;
 import com.intellij.openapi.project.Project;
+import com.intellij.openapi.roots.ModuleRootManager;
 import com.intellij.openapi.roots.ProjectRootManager;
+import com.intellij.openapi.util.Pair;
+import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.openapi.vfs.LocalFileSystem;
+import com.intellij.openapi.vfs.VfsUtilCore;
 import com.intellij.openapi.vfs.VirtualFile;
-import com.intellij.openapi.vfs.VirtualFileCopyEvent;
-import com.intellij.openapi.vfs.VirtualFileEvent;
-import com.intellij.openapi.vfs.VirtualFileListener;
 import com.intellij.openapi.vfs.VirtualFileManager;
-import com.intellij.openapi.vfs.VirtualFileMoveEvent;
-import com.intellij.openapi.vfs.VirtualFilePropertyEvent;
+import com.intellij.openapi.vfs.newvfs.BulkFileListener;
+import com.intellij.openapi.vfs.newvfs.events.VFileCopyEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFileDeleteEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFileEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFileMoveEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFilePropertyChangeEvent;
+import com.intellij.util.containers.ContainerUtil;
+import com.intellij.util.messages.MessageBusConnection;
 import com.twitter.intellij.pants.metrics.PantsExternalMetricsListenerManager;
 import com.twitter.intellij.pants.model.PantsOptions;
+import com.twitter.intellij.pants.model.PantsTargetAddress;
 import com.twitter.intellij.pants.settings.PantsSettings;
 import com.twitter.intellij.pants.util.PantsConstants;
 import com.twitter.intellij.pants.util.PantsUtil;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
-import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
 import java.time.LocalTime;
+import java.util.ArrayDeque;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.jar.Manifest;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static java.time.temporal.ChronoUnit.MILLIS;
 
@@ -47,28 +66,44 @@ public class FileChangeTracker {
 
   private static FileChangeTracker instance = new FileChangeTracker();
 
-  // One to one relation between VirtualFileListener and Project,
-  // so whenever a VirtualFileListener is triggered, we know which Project is affected.
-  private static ConcurrentHashMap<VirtualFileListener, Project> listenToProjectMap = new ConcurrentHashMap<>();
+  // Projects whose files are tracked by the single VFS listener.
+  private static ConcurrentHashMap<Project, TrackedProject> trackedProjects = new ConcurrentHashMap<>();
+  // Connected while at least one project is tracked.
+  @Nullable
+  private static MessageBusConnection connection = null;
 
-  // Maps from Project to <myIsDirty, lastCompileSnapshot>
+  // Maps from Project to <myIsDirty, myDirtyTargets, lastCompileSnapshot>
   private static ConcurrentHashMap<Project, ProjectState> projectStates = new ConcurrentHashMap<>();
 
+  // Incremented whenever a project or targets are marked dirty.
+  private static final AtomicLong modificationStamp = new AtomicLong();
+  // Maps from Project to the modification stamps of its targets, or of the whole project under the empty string,
+  // when they were last marked dirty.
+  private static ConcurrentHashMap<Project, ConcurrentHashMap<String, Long>> dirtyStamps = new ConcurrentHashMap<>();
+
+  // Maps from a hashed file to the fingerprint it had when it was hashed, and the hash.
+  private static ConcurrentHashMap<Path, Pair<FileFingerprint, String>> fileHashes = new ConcurrentHashMap<>();
+
   /**
    * Keep certain states about the current project.
    */
   private static class ProjectState {
 
+    // Whether there is a change that can't be attributed to targets, e.g. in a BUILD file or a failed compile.
     boolean myIsDirty;
+    // Targets owning the files changed since they were last compiled.
+    Set<String> myDirtyTargets;
     LocalTime myLastModifiedTime;
     Optional<CompileSnapshot> myLastCompileSnapshot;
 
     public ProjectState(
       boolean isDirty,
+      Set<String> dirtyTargets,
       LocalTime lastModified,
       Optional<CompileSnapshot> lastCompileSnapshot
     ) {
       myIsDirty = isDirty;
+      myDirtyTargets = Collections.unmodifiableSet(dirtyTargets);
       myLastModifiedTime = lastModified;
       myLastCompileSnapshot = lastCompileSnapshot;
     }
@@ -81,6 +116,10 @@ public class FileChangeTracker {
       myIsDirty = dirty;
     }
 
+    public Set<String> getDirtyTargets() {
+      return myDirtyTargets;
+    }
+
     public LocalTime getLastModifiedTime() {
       return myLastModifiedTime;
     }
@@ -102,20 +141,125 @@ public class FileChangeTracker {
     return instance;
   }
 
-  private static void markDirty(@NotNull VirtualFile file, final PantsOptions pantsOptions, @NotNull VirtualFileListener listener) {
-    Project project = listenToProjectMap.get(listener);
+  /**
+   * Keeps what is needed to tell whether a changed file belongs to the project,
+   * so unrelated files can be skipped without walking up to the pants executable.
+   */
+  private static class TrackedProject {
+    private final Project myProject;
+    @Nullable
+    private final Path myWorkdir;
+    @Nullable
+    private VirtualFile myBuildRoot = null;
+
+    private TrackedProject(@NotNull Project project, @NotNull PantsOptions pantsOptions) {
+      myProject = project;
+      myWorkdir = pantsOptions.get(PantsConstants.PANTS_OPTION_PANTS_WORKDIR)
+        .map(workdir -> Paths.get(workdir).toAbsolutePath())
+        .orElse(null);
+    }
 
-    ChangeType changeType = detectChangeType(project, pantsOptions, file);
-    LOG.debug(String.format("Changed: %s. In project: %s", file.getPath(), changeType));
-    if (changeType == ChangeType.UNRELATED) {
-      return;
+    /**
+     * Looked up on the first batch of events, because modules may not be loaded when the project is registered.
+     */
+    @Nullable
+    private VirtualFile getBuildRoot() {
+      if (myBuildRoot == null || !myBuildRoot.isValid()) {
+        myBuildRoot = PantsUtil.findBuildRoot(myProject).orElse(null);
+      }
+      return myBuildRoot;
     }
 
-    markDirty(project);
+    private boolean isInWorkdir(@NotNull VirtualFile file) {
+      return myWorkdir != null ? Paths.get(file.getPath()).startsWith(myWorkdir) : file.getPath().contains("/.pants.d/");
+    }
+  }
+
+  private static final BulkFileListener LISTENER = new BulkFileListener() {
+    @Override
+    public void before(@NotNull List<? extends VFileEvent> events) {
+      for (VFileEvent event : events) {
+        ManifestClasspathCache.beforeChange(event);
+      }
+      // Deleted, moved and renamed files can only be mapped to their old targets while they are still in place.
+      processEvents(events, true);
+    }
 
-    if (changeType == ChangeType.BUILD) {
-      ProjectRefreshListener.notify(project);
+    @Override
+    public void after(@NotNull List<? extends VFileEvent> events) {
+      processEvents(events, false);
+    }
+  };
+
+  private static void processEvents(@NotNull List<? extends VFileEvent> events, boolean isBeforeChange) {
+    for (TrackedProject trackedProject : trackedProjects.values()) {
+      final Project project = trackedProject.myProject;
+      if (project.isDisposed()) {
+        continue;
+      }
+      final VirtualFile buildRoot = trackedProject.getBuildRoot();
+      if (buildRoot == null) {
+        continue;
+      }
+
+      boolean isBuildFileChanged = false;
+      boolean isProjectChanged = false;
+      Set<String> changedTargets = null;
+      for (VFileEvent event : events) {
+        if (!isProcessed(event, isBeforeChange) || !(event.getFileSystem() instanceof LocalFileSystem)) {
+          continue;
+        }
+        // The file of a copy event is the original, while the copy is the one that changes a module.
+        final VirtualFile file = event instanceof VFileCopyEvent ? ((VFileCopyEvent)event).findCreatedFile() : event.getFile();
+        if (file == null || !VfsUtilCore.isAncestor(buildRoot, file, false)) {
+          continue;
+        }
+
+        final ChangeType changeType = detectChangeType(trackedProject, file);
+        if (LOG.isDebugEnabled()) {
+          LOG.debug(String.format("Changed: %s. In project: %s", file.getPath(), changeType));
+        }
+        if (changeType == ChangeType.BUILD) {
+          isBuildFileChanged = true;
+        }
+        else if (changeType == ChangeType.OTHER) {
+          final List<String> owningTargets = getTargetAddresses(ProjectRootManager.getInstance(project).getFileIndex().getModuleForFile(file));
+          if (owningTargets.isEmpty()) {
+            isProjectChanged = true;
+          }
+          else {
+            if (changedTargets == null) {
+              changedTargets = new HashSet<>();
+            }
+            changedTargets.addAll(owningTargets);
+          }
+        }
+      }
+
+      if (changedTargets != null) {
+        markDirty(project, changedTargets);
+      }
+      if (isBuildFileChanged || isProjectChanged) {
+        markDirty(project);
+      }
+      if (isBuildFileChanged) {
+        ProjectRefreshListener.notify(project);
+      }
+    }
+  }
+
+  /**
+   * Deleted files only affect their targets before the change, moved and renamed ones affect
+   * both their old targets before the change and their new ones after it, and the other files their targets after it.
+   */
+  private static boolean isProcessed(@NotNull VFileEvent event, boolean isBeforeChange) {
+    if (event instanceof VFileDeleteEvent) {
+      return isBeforeChange;
     }
+    if (event instanceof VFileMoveEvent || (event instanceof VFilePropertyChangeEvent && ((VFilePropertyChangeEvent)event).isRename())) {
+      return true;
+    }
+    return !isBeforeChange;
   }
 
   enum ChangeType {
@@ -124,20 +268,12 @@ public class FileChangeTracker {
     OTHER;
   }
 
-  private static ChangeType detectChangeType(Project project,final PantsOptions pantsOptions, @NotNull VirtualFile file) {
-    ProjectRootManager rootManager = ProjectRootManager.getInstance(project);
+  private static ChangeType detectChangeType(@NotNull TrackedProject trackedProject, @NotNull VirtualFile file) {
+    ProjectRootManager rootManager = ProjectRootManager.getInstance(trackedProject.myProject);
 
     if (rootManager.getFileIndex().getContentRootForFile(file) != null) {
-      boolean isBuildFile = PantsUtil.isBUILDFileName(file.getName());
-      boolean isUnderPantsRepo = PantsUtil.isFileUnderPantsRepo(file);
-
-      Path filePath = Paths.get(file.getPath());
-      boolean shouldBeIgnored =
-          pantsOptions.get(PantsConstants.PANTS_OPTION_PANTS_WORKDIR)
-          .map(workdir -> filePath.startsWith(Paths.get(workdir).toAbsolutePath()))
-          .orElse(filePath.toUri().toString().contains("/.pants.d/"));
-
-      if (isUnderPantsRepo && isBuildFile && !shouldBeIgnored) {
+      // The file is under the build root, so it is under the pants repo.
+      if (PantsUtil.isBUILDFileName(file.getName()) && !trackedProject.isInWorkdir(file)) {
         return ChangeType.BUILD;
       }
 
@@ -148,12 +284,68 @@ public class FileChangeTracker {
   }
 
   public static void markDirty(@NotNull Project project) {
+    recordDirtyStamp(project, Collections.singletonList(""));
     final boolean isDirty = true;
-    projectStates.put(project, new ProjectState(isDirty, LocalTime.now(), Optional.empty()));
+    projectStates.compute(project, (key, state) -> new ProjectState(
+      isDirty,
+      state != null ? state.getDirtyTargets() : Collections.emptySet(),
+      LocalTime.now(),
+      Optional.empty()
+    ));
+  }
+
+  /**
+   * Marks only the given targets dirty, so compiling targets that don't depend on them can still be a no-op.
+   */
+  public static void markDirty(@NotNull Project project, @NotNull Collection<String> targetAddresses) {
+    recordDirtyStamp(project, targetAddresses);
+    projectStates.compute(project, (key, state) -> {
+      if (state == null) {
+        // Nothing has been compiled yet, so the next compile happens anyway.
+        return null;
+      }
+      final Set<String> dirtyTargets = new HashSet<>(state.getDirtyTargets());
+      dirtyTargets.addAll(targetAddresses);
+      return new ProjectState(state.isDirty(), dirtyTargets, LocalTime.now(), state.getLastCompileSnapshot());
+    });
+  }
+
+  private static void recordDirtyStamp(@NotNull Project project, @NotNull Collection<String> keys) {
+    final long stamp = modificationStamp.incrementAndGet();
+    final Map<String, Long> stamps = dirtyStamps.computeIfAbsent(project, key -> new ConcurrentHashMap<>());
+    for (String key : keys) {
+      stamps.put(key, stamp);
+    }
+  }
+
+  /**
+   * @return the current modification stamp, to be passed to {@link #isDirtySince}.
+   */
+  public static long getModificationStamp() {
+    return modificationStamp.get();
+  }
+
+  /**
+   * @return true if the project, or any of the targets or their transitive dependencies, was marked dirty
+   * after the given modification stamp was taken.
+   */
+  public static boolean isDirtySince(@NotNull Project project, @NotNull Set<String> targetAddresses, long stamp) {
+    final Map<String, Long> stamps = dirtyStamps.get(project);
+    if (stamps == null) {
+      return false;
+    }
+    if (stamps.getOrDefault("", 0L) > stamp) {
+      return true;
+    }
+    return getTargetClosure(project, targetAddresses).stream().anyMatch(target -> stamps.getOrDefault(target, 0L) > stamp);
   }
 
   public static void addManifestJarIntoSnapshot(@NotNull Project project) {
-    Optional<CompileSnapshot> snapshot = projectStates.get(project).getLastCompileSnapshot();
+    ProjectState state = projectStates.get(project);
+    if (state == null) {
+      return;
+    }
+    Optional<CompileSnapshot> snapshot = state.getLastCompileSnapshot();
     if (!snapshot.isPresent()) {
       return;
     }
@@ -162,25 +354,68 @@ public class FileChangeTracker {
   }
 
 
+  /**
+   * The hash is only used to tell whether the file changed, so a fast non-cryptographic one is enough.
+   * The file is streamed rather than read into memory, and not read at all if its attributes are unchanged since the last call.
+   */
   public static Optional<String> fileHash(Optional<VirtualFile> vf) {
     if (!vf.isPresent()) {
       return Optional.empty();
     }
-    HashFunction hf = Hashing.md5();
+    Path path = Paths.get(vf.get().getPath());
     try {
-      byte[] bytes = Files.readAllBytes(Paths.get(vf.get().getPath()));
-      HashCode hash = hf.newHasher().putBytes(bytes).hash();
-      return Optional.of(hash.toString());
+      BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+      FileFingerprint fingerprint = new FileFingerprint(attributes);
+      Pair<FileFingerprint, String> hashed = fileHashes.get(path);
+      if (hashed == null || !hashed.first.equals(fingerprint)) {
+        HashCode hash = MoreFiles.asByteSource(path).hash(Hashing.murmur3_128());
+        hashed = Pair.create(fingerprint, hash.toString());
+        fileHashes.put(path, hashed);
+      }
+      return Optional.of(hashed.second);
     }
     catch (IOException e) {
+      fileHashes.remove(path);
       e.printStackTrace();
       return Optional.empty();
     }
   }
 
+  /**
+   * Attributes of a file that change whenever its contents are rewritten.
+   */
+  static class FileFingerprint {
+    final long mySize;
+    final FileTime myLastModifiedTime;
+    @Nullable
+    final Object myFileKey;
+
+    FileFingerprint(@NotNull BasicFileAttributes attributes) {
+      mySize = attributes.size();
+      myLastModifiedTime = attributes.lastModifiedTime();
+      myFileKey = attributes.fileKey();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (obj == null || getClass() != obj.getClass()) {
+        return false;
+      }
+      FileFingerprint other = (FileFingerprint) obj;
+      return mySize == other.mySize
+             && myLastModifiedTime.equals(other.myLastModifiedTime)
+             && Objects.equals(myFileKey, other.myFileKey);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(mySize, myLastModifiedTime, myFileKey);
+    }
+  }
+
   /**
    * Determine whether a project should be recompiled given targets to compile and PantsSettings
-   * by comparing with the last one.
+   * by comparing with the last one. Changed files only count if they belong to the targets or their transitive dependencies.
    * <p>
    * It assumes the compilation is going to work, if not, `markDirty` should be called explicitly upon failure.
    * <p>
@@ -188,7 +423,7 @@ public class FileChangeTracker {
    *
    * @param project:         project under question.
    * @param targetAddresses: target addresses for this compile.
-   * @return true if anything in the project has changed or the current `CompileSnapshot` does not match with
+   * @return true if anything the targets depend on has changed or the current `CompileSnapshot` does not match with
    * the previous one.
    */
   public static boolean shouldRecompileThenReset(@NotNull Project project, @NotNull Set<String> targetAddresses) {
@@ -201,17 +436,27 @@ public class FileChangeTracker {
 
     // there is no previous record.
     if (lastRecordedState == null) {
-      resetProjectState(project, snapshot);
+      resetProjectState(project, snapshot, Collections.emptySet());
       return true;
     }
-    if (lastRecordedState.isDirty()) {
+    Set<String> targetClosure = getTargetClosure(project, targetAddresses);
+    Set<String> dirtyTargets = new HashSet<>(lastRecordedState.getDirtyTargets());
+    dirtyTargets.retainAll(targetClosure);
+    Set<String> remainingDirtyTargets = new HashSet<>(lastRecordedState.getDirtyTargets());
+    remainingDirtyTargets.removeAll(dirtyTargets);
+    LOG.debug(String.format(
+      "Dirty targets: %d, of which %d are in the %d targets to compile", lastRecordedState.getDirtyTargets().size(),
+      dirtyTargets.size(), targetClosure.size()
+    ));
+    boolean isDirty = lastRecordedState.isDirty() || !dirtyTargets.isEmpty();
+    if (isDirty) {
       long betweenMilliSec = MILLIS.between(lastRecordedState.getLastModifiedTime(), LocalTime.now());
       PantsExternalMetricsListenerManager.getInstance().logDurationBeforePantsCompile(betweenMilliSec);
     }
     Optional<CompileSnapshot> previousSnapshot = lastRecordedState.getLastCompileSnapshot();
     if (
-      // Recompile if project is dirty or there is no previous record.
-      (lastRecordedState.isDirty())
+      // Recompile if project or any of the targets to compile is dirty.
+      isDirty
       // Recompile if there is no previous record.
       || !previousSnapshot.isPresent()
       // Recompile if current snapshot is different from previous one.
@@ -220,7 +465,8 @@ public class FileChangeTracker {
       // if manifest is not valid any more.
       || !isManifestJarValid(project)
     ) {
-      resetProjectState(project, snapshot);
+      // Changes outside of the compiled targets still have to be picked up by a later compile of their targets.
+      resetProjectState(project, snapshot, remainingDirtyTargets);
       return true;
     }
 
@@ -228,123 +474,117 @@ public class FileChangeTracker {
   }
 
   /**
-   * Check whether all the class path entries in the manifest are valid.
-   *
-   * @param project current project.
-   * @return true iff the manifest jar is valid.
+   * @return the given targets, the targets matched by the given glob specs, and the targets of all modules
+   * the modules of those targets transitively depend on.
    */
-  private static boolean isManifestJarValid(@NotNull Project project) {
-    Optional<VirtualFile> manifestJar = PantsUtil.findProjectManifestJar(project);
-    if (!manifestJar.isPresent()) {
-      return false;
-    }
-    VirtualFile file = manifestJar.get();
-    if (!new File(file.getPath()).exists()) {
-      return false;
-    }
-    try {
-      VirtualFile manifestInJar =
-        VirtualFileManager.getInstance().refreshAndFindFileByUrl("jar://" + file.getPath() + "!/META-INF/MANIFEST.MF");
-      if (manifestInJar == null) {
-        return false;
+  @NotNull
+  private static Set<String> getTargetClosure(@NotNull Project project, @NotNull Set<String> targetAddresses) {
+    return ReadAction.compute(() -> {
+      final Set<String> result = new HashSet<>(targetAddresses);
+      final Set<Module> visited = new HashSet<>();
+      final Deque<Module> queue = new ArrayDeque<>();
+      for (Module module : ModuleManager.getInstance(project).getModules()) {
+        if (getTargetAddresses(module).stream().anyMatch(address -> isMatchedBy(address, targetAddresses)) && visited.add(module)) {
+          queue.add(module);
+        }
       }
-      Manifest manifest = new Manifest(manifestInJar.getInputStream());
-      List<String> relPaths = PantsUtil.parseCmdParameters(manifest.getMainAttributes().getValue("Class-Path"));
-      for (String path : relPaths) {
-        // All rel paths in META-INF/MANIFEST.MF is relative to the jar directory
-        if (!new File(file.getParent().getPath(), path).exists()) {
-          return false;
+      while (!queue.isEmpty()) {
+        final Module module = queue.poll();
+        result.addAll(getTargetAddresses(module));
+        for (Module dependency : ModuleRootManager.getInstance(module).getDependencies()) {
+          if (visited.add(dependency)) {
+            queue.add(dependency);
+          }
         }
       }
+      return result;
+    });
+  }
+
+  /**
+   * @return true iff the address is one of the target specs, or in a directory matched by a `dir:` or `dir::` spec.
+   */
+  private static boolean isMatchedBy(@NotNull String targetAddress, @NotNull Set<String> targetSpecs) {
+    if (targetSpecs.contains(targetAddress)) {
       return true;
     }
-    catch (IOException e) {
-      e.printStackTrace();
+    final Optional<String> targetDir = PantsTargetAddress.extractPath(targetAddress).map(path -> StringUtil.trimStart(path, "//"));
+    if (!targetDir.isPresent()) {
       return false;
     }
+    for (String spec : targetSpecs) {
+      final String relativeSpec = StringUtil.trimStart(spec, "//");
+      if (relativeSpec.endsWith("::")) {
+        final String specDir = StringUtil.trimEnd(StringUtil.trimEnd(relativeSpec, "::"), "/");
+        if (specDir.isEmpty() || targetDir.get().equals(specDir) || targetDir.get().startsWith(specDir + "/")) {
+          return true;
+        }
+      }
+      else if (relativeSpec.endsWith(":") && targetDir.get().equals(StringUtil.trimEnd(relativeSpec, ":"))) {
+        return true;
+      }
+    }
+    return false;
   }
 
   /**
-   * Reset project to be clean.
+   * @return addresses of the targets of the module, recorded when the project was imported.
    */
-  private static void resetProjectState(@NotNull Project project, CompileSnapshot snapshot) {
-    boolean isDirty = false;
-    projectStates.put(project, new ProjectState(isDirty, LocalTime.now(), Optional.of(snapshot)));
+  @NotNull
+  private static List<String> getTargetAddresses(@Nullable Module module) {
+    return ContainerUtil.map(PantsUtil.getTargetAddressesFromModule(module), PantsTargetAddress::toString);
   }
 
-  public static void registerProject(@NotNull Project project, final PantsOptions pantsOptions) {
-    VirtualFileListener listener = getNewListener(pantsOptions);
-    LocalFileSystem.getInstance().addVirtualFileListener(listener);
-    listenToProjectMap.put(listener, project);
+  /**
+   * Check whether all the class path entries in the manifest are valid.
+   *
+   * @param project current project.
+   * @return true iff the manifest jar is valid.
+   */
+  private static boolean isManifestJarValid(@NotNull Project project) {
+    Optional<VirtualFile> manifestJar = PantsUtil.findProjectManifestJar(project);
+    // Cached results are only kept up to date while the VFS listener is connected.
+    return manifestJar.isPresent() && ManifestClasspathCache.isValid(manifestJar.get(), trackedProjects.containsKey(project));
   }
 
-  public static void unregisterProject(@NotNull Project project) {
-    projectStates.remove(project);
-
-    // Remove the listener for the project.
-    listenToProjectMap.entrySet().stream()
-      .filter(s -> s.getValue() == project)
-      .findFirst()
-      .ifPresent(x -> {
-        VirtualFileListener listener = x.getKey();
-        listenToProjectMap.remove(listener);
-        LocalFileSystem.getInstance().removeVirtualFileListener(listener);
-      });
+  /**
+   * Reset project to be clean.
+   */
+  private static void resetProjectState(@NotNull Project project, CompileSnapshot snapshot, Set<String> dirtyTargets) {
+    boolean isDirty = false;
+    projectStates.put(project, new ProjectState(isDirty, dirtyTargets, LocalTime.now(), Optional.of(snapshot)));
   }
 
-  private static VirtualFileListener getNewListener(final PantsOptions pantsOptions) {
-    return new VirtualFileListener() {
-
-      private void markDirty(VirtualFile file) {
-        FileChangeTracker.markDirty(file, pantsOptions, this);
-      }
-
-      @Override
-      public void propertyChanged(@NotNull VirtualFilePropertyEvent event) {
-        markDirty(event.getFile());
-      }
-
-      @Override
-      public void contentsChanged(@NotNull VirtualFileEvent event) {
-        markDirty(event.getFile());
-      }
-
-      @Override
-      public void fileCreated(@NotNull VirtualFileEvent event) {
-        markDirty(event.getFile());
-      }
-
-      @Override
-      public void fileDeleted(@NotNull VirtualFileEvent event) {
-        markDirty(event.getFile());
-      }
-
-      @Override
-      public void fileMoved(@NotNull VirtualFileMoveEvent event) {
-        markDirty(event.getFile());
-      }
-
-      @Override
-      public void fileCopied(@NotNull VirtualFileCopyEvent event) {
-        markDirty(event.getFile());
-      }
-
-      @Override
-      public void beforePropertyChange(@NotNull VirtualFilePropertyEvent event) {
-      }
-
-      @Override
-      public void beforeContentsChange(@NotNull VirtualFileEvent event) {
+  public static void registerProject(@NotNull Project project, final PantsOptions pantsOptions) {
+    trackedProjects.put(project, new TrackedProject(project, pantsOptions));
+    synchronized (FileChangeTracker.class) {
+      if (connection == null) {
+        // Also disconnected when the plugin is unloaded, even if not all projects were unregistered.
+        connection = ApplicationManager.getApplication().getMessageBus().connect(FileChangeTrackerDisposable.getInstance());
+        connection.subscribe(VirtualFileManager.VFS_CHANGES, LISTENER);
       }
+    }
+  }
 
-      @Override
-      public void beforeFileDeletion(@NotNull VirtualFileEvent event) {
-      }
+  static void onDisposed() {
+    synchronized (FileChangeTracker.class) {
+      connection = null;
+    }
+    trackedProjects.clear();
+  }
 
-      @Override
-      public void beforeFileMovement(@NotNull VirtualFileMoveEvent event) {
+  public static void unregisterProject(@NotNull Project project) {
+    projectStates.remove(project);
+    dirtyStamps.remove(project);
+    trackedProjects.remove(project);
+
+    // Stop listening once no project is tracked.
+    synchronized (FileChangeTracker.class) {
+      if (trackedProjects.isEmpty() && connection != null) {
+        connection.disconnect();
+        connection = null;
       }
-    };
+    }
   }
 
   /**
@@ -0,0 +1,23 @@
+// Copyright 2023 Pants project contributors (see CONTRIBUTORS.md).
+// Licensed under the Apache License, Version 2.0 (see LICENSE).
+
+package com.twitter.intellij.pants.file;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.ApplicationManager;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Parent of the message bus connection of {@link FileChangeTracker}, so the VFS listener can't outlive the plugin.
+ */
+public class FileChangeTrackerDisposable implements Disposable {
+  @NotNull
+  public static FileChangeTrackerDisposable getInstance() {
+    return ApplicationManager.getApplication().getService(FileChangeTrackerDisposable.class);
+  }
+
+  @Override
+  public void dispose() {
+    FileChangeTracker.onDisposed();
+  }
+}
@@ -0,0 +1,200 @@
+// Copyright 2023 Pants project contributors (see CONTRIBUTORS.md).
+// Licensed under the Apache License, Version 2.0 (see LICENSE).
+
+package com.twitter.intellij.pants.file;
+
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.openapi.vfs.newvfs.events.VFileContentChangeEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFileDeleteEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFileEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFileMoveEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFilePropertyChangeEvent;
+import com.twitter.intellij.pants.util.PantsUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.stream.Collectors;
+
+/**
+ * Class-Path entries of manifest jars, parsed once per version of the jar, and whether all of them exist.
+ * The jar itself is stat-ed on every check, since pants rewrites it in its dist directory, which may not be in the VFS.
+ * A positive result is kept until the jar changes or a VFS event deletes, moves or renames one of the entries,
+ * so checking an unchanged classpath again doesn't stat every entry. Entries can also be deleted outside the IDE,
+ * e.g. by `./pants clean-all` in a terminal, so the directories containing the entries are still stat-ed, and a
+ * cached positive result is only used while none of them was modified since.
+ */
+class ManifestClasspathCache {
+  private static final Logger LOG = Logger.getInstance(ManifestClasspathCache.class);
+
+  // Maps from manifest jar path to its parsed entries.
+  private static final ConcurrentHashMap<String, CachedManifest> manifests = new ConcurrentHashMap<>();
+  // Incremented on every invalidation. A positive result is stored with the count read before the check,
+  // and trusted only while the count is unchanged, so a check that raced with an invalidation is never trusted.
+  private static final AtomicLong invalidationCount = new AtomicLong();
+
+  private static class CachedManifest {
+    final VirtualFile myJar;
+    final FileChangeTracker.FileFingerprint myFingerprint;
+    // Canonical paths of the entries, sorted so the entries under a directory are next to each other.
+    final NavigableSet<String> myEntries;
+    // Parent directories of the entries. Usually far fewer than the entries, since pants links the jars into a few directories.
+    final Set<String> myDirectories;
+    // Last modified times of the directories, taken before the last positive check.
+    volatile Map<String, Long> myDirectoryTimestamps = Collections.emptyMap();
+    // Invalidation count read before the last positive check, or -1. Written after the timestamps.
+    volatile long myValidAt = -1;
+
+    private CachedManifest(
+      @NotNull VirtualFile jar,
+      @NotNull FileChangeTracker.FileFingerprint fingerprint,
+      @NotNull NavigableSet<String> entries
+    ) {
+      myJar = jar;
+      myFingerprint = fingerprint;
+      myEntries = entries;
+      myDirectories = entries.stream().map(path -> new File(path).getParent()).filter(Objects::nonNull).collect(Collectors.toSet());
+    }
+
+    @NotNull
+    private Map<String, Long> getDirectoryTimestamps() {
+      final Map<String, Long> result = new HashMap<>();
+      for (String directory : myDirectories) {
+        result.put(directory, new File(directory).lastModified());
+      }
+      return result;
+    }
+
+    private boolean areDirectoriesUnchanged() {
+      for (Map.Entry<String, Long> entry : myDirectoryTimestamps.entrySet()) {
+        if (new File(entry.getKey()).lastModified() != entry.getValue()) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    private boolean containsPathOrDescendant(@NotNull String path) {
+      if (myEntries.contains(path)) {
+        return true;
+      }
+      final String directory = path + "/";
+      final String next = myEntries.ceiling(directory);
+      return next != null && next.startsWith(directory);
+    }
+  }
+
+  /**
+   * @param trustCachedResult whether VFS events are being delivered to {@link #beforeChange(VFileEvent)},
+   *                          so a cached positive result can be trusted.
+   * @return true iff the manifest jar exists and all the class path entries in it exist.
+   */
+  static boolean isValid(@NotNull VirtualFile manifestJar, boolean trustCachedResult) {
+    final String jarPath = manifestJar.getPath();
+    final FileChangeTracker.FileFingerprint fingerprint;
+    try {
+      fingerprint = new FileChangeTracker.FileFingerprint(Files.readAttributes(Paths.get(jarPath), BasicFileAttributes.class));
+    }
+    catch (IOException e) {
+      manifests.remove(jarPath);
+      return false;
+    }
+    CachedManifest cached = manifests.get(jarPath);
+    if (cached == null || !cached.myFingerprint.equals(fingerprint)) {
+      final NavigableSet<String> entries = readClassPath(jarPath);
+      if (entries == null) {
+        manifests.remove(jarPath);
+        return false;
+      }
+      cached = new CachedManifest(manifestJar, fingerprint, entries);
+      // Published before the count is read, so invalidations during the check find it.
+      manifests.put(jarPath, cached);
+    }
+    else if (trustCachedResult && cached.myValidAt == invalidationCount.get() && cached.areDirectoriesUnchanged()) {
+      return true;
+    }
+
+    final long invalidationsBeforeCheck = invalidationCount.get();
+    // Taken before the entries are checked, so a deletion during the check changes them.
+    final Map<String, Long> directoryTimestamps = cached.getDirectoryTimestamps();
+    final boolean isValid = cached.myEntries.parallelStream().allMatch(path -> new File(path).exists());
+    if (isValid) {
+      cached.myDirectoryTimestamps = directoryTimestamps;
+    }
+    cached.myValidAt = isValid ? invalidationsBeforeCheck : -1;
+    return isValid;
+  }
+
+  /**
+   * Drops the cached results affected by the event. Has to be called before the change is applied,
+   * while the paths in the event still point to the old locations.
+   */
+  static void beforeChange(@NotNull VFileEvent event) {
+    if (manifests.isEmpty()) {
+      return;
+    }
+    if (event instanceof VFileContentChangeEvent) {
+      for (Map.Entry<String, CachedManifest> entry : manifests.entrySet()) {
+        if (entry.getValue().myJar.equals(event.getFile())) {
+          invalidationCount.incrementAndGet();
+          manifests.remove(entry.getKey());
+        }
+      }
+    }
+    else if (event instanceof VFileDeleteEvent
+             || event instanceof VFileMoveEvent
+             || (event instanceof VFilePropertyChangeEvent && ((VFilePropertyChangeEvent)event).isRename())) {
+      invalidateUnder(event.getPath());
+    }
+  }
+
+  private static void invalidateUnder(@NotNull String path) {
+    for (Map.Entry<String, CachedManifest> entry : manifests.entrySet()) {
+      if (FileUtil.isAncestor(path, entry.getKey(), false)) {
+        invalidationCount.incrementAndGet();
+        manifests.remove(entry.getKey());
+      }
+      else if (entry.getValue().containsPathOrDescendant(path)) {
+        invalidationCount.incrementAndGet();
+      }
+    }
+  }
+
+  @Nullable
+  private static NavigableSet<String> readClassPath(@NotNull String jarPath) {
+    try (JarFile jarFile = new JarFile(jarPath)) {
+      final Manifest manifest = jarFile.getManifest();
+      if (manifest == null) {
+        return null;
+      }
+      final String jarDirectory = new File(jarPath).getParent();
+      final NavigableSet<String> result = new TreeSet<>();
+      for (String path : PantsUtil.parseCmdParameters(manifest.getMainAttributes().getValue("Class-Path"))) {
+        // All rel paths in META-INF/MANIFEST.MF is relative to the jar directory
+        result.add(FileUtil.toCanonicalPath(new File(jarDirectory, path).getPath()));
+      }
+      return result;
+    }
+    catch (IOException e) {
+      LOG.warn("Failed to read the manifest of " + jarPath, e);
+      return null;
+    }
+  }
+}
@@ -0,0 +1,42 @@
+// Copyright 2023 Pants project contributors (see CONTRIBUTORS.md).
+// Licensed under the Apache License, Version 2.0 (see LICENSE).
+
+package com.twitter.intellij.pants.metrics;
+
+import com.google.common.base.Stopwatch;
+import com.intellij.openapi.externalSystem.service.project.manage.ProjectDataImportListener;
+import com.intellij.openapi.project.Project;
+import com.twitter.intellij.pants.settings.PantsSettings;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times how long it takes to apply the resolved DataNodes of a pants project to the IDE project.
+ */
+public class PantsDataImportMetricsListener implements ProjectDataImportListener {
+  private final Project myProject;
+  private final Map<String, Stopwatch> myImports = new ConcurrentHashMap<>();
+
+  public PantsDataImportMetricsListener(@NotNull Project project) {
+    myProject = project;
+  }
+
+  @Override
+  public void onImportStarted(@Nullable String projectPath) {
+    if (projectPath != null && PantsSettings.getInstance(myProject).getLinkedProjectSettings(projectPath) != null) {
+      myImports.put(projectPath, Stopwatch.createStarted());
+    }
+  }
+
+  @Override
+  public void onImportFinished(@Nullable String projectPath) {
+    final Stopwatch stopwatch = projectPath != null ? myImports.remove(projectPath) : null;
+    if (stopwatch != null) {
+      PantsMetrics.addStageTime(projectPath, PantsMetrics.STAGE_DATA_IMPORT, stopwatch.elapsed(TimeUnit.MILLISECONDS));
+    }
+  }
+}
@@ -51,5 +51,25 @@ public interface PantsExternalMetricsListener {
    */
   void logIndexingDuration(long milliSeconds) throws Throwable;
 
+  /**
+   * Log the duration of one stage of a project import, e.g. the pants export or a single resolver extension.
+   *
+   * @param projectPath  path of the imported pants project.
+   * @param stage        name of the stage.
+   * @param milliSeconds long number.
+   * @throws Throwable
+   */
+  default void logImportStageDuration(String projectPath, String stage, long milliSeconds) throws Throwable {
+  }
+
+  /**
+   * Log that several compile requests were merged into a single pants invocation.
+   *
+   * @param requestCount number of merged requests.
+   * @throws Throwable
+   */
+  default void logMergedCompileRequests(int requestCount) throws Throwable {
+  }
+
   void logEvent(String event);
 }
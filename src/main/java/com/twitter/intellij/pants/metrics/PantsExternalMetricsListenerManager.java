@@ -84,6 +84,30 @@ public class PantsExternalMetricsListenerManager implements PantsExternalMetrics
     });
   }
 
+  @Override
+  public void logImportStageDuration(String projectPath, String stage, long milliSeconds) {
+    Arrays.stream(EP_NAME.getExtensions()).forEach(s -> {
+      try {
+        s.logImportStageDuration(projectPath, stage, milliSeconds);
+      }
+      catch (Throwable t) {
+        LOG.info(t);
+      }
+    });
+  }
+
+  @Override
+  public void logMergedCompileRequests(int requestCount) {
+    Arrays.stream(EP_NAME.getExtensions()).forEach(s -> {
+      try {
+        s.logMergedCompileRequests(requestCount);
+      }
+      catch (Throwable t) {
+        LOG.info(t);
+      }
+    });
+  }
+
   public void logTestRunner(RunConfiguration runConfiguration) {
     /**
      /**
@@ -7,20 +7,25 @@ import com.google.common.base.Stopwatch;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.project.DumbServiceImpl;
 import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.io.FileUtil;
 import com.twitter.intellij.pants.util.PantsUtil;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.Writer;
+import java.util.HashMap;
 import java.util.Map;
+import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
 /**
@@ -31,6 +36,9 @@ public class PantsMetrics {
   public static ScheduledExecutorService indexThreadPool;
 
   private static ConcurrentHashMap<String, Stopwatch> timers = new ConcurrentHashMap<>();
+  private static ConcurrentHashMap<String, AtomicLong> counters = new ConcurrentHashMap<>();
+  // project path to import stage to milliseconds spent in it during the last import of that project
+  private static ConcurrentHashMap<String, ConcurrentHashMap<String, AtomicLong>> stages = new ConcurrentHashMap<>();
   public static final String SYSTEM_PROPERTY_METRICS_REPORT_DIR = "pants.metrics.report.dir";
   public static final String SYSTEM_PROPERTY_METRICS_IMPORT_DIR = "pants.metrics.import.dir";
   public static final String SYSTEM_PROPERTY_METRICS_ENABLE = "pants.metrics.enable";
@@ -41,6 +49,16 @@ public class PantsMetrics {
   private static final String METRIC_INDEXING = "indexing_second";
   private static final String METRIC_LOAD = "load_second";
   private static final String METRIC_EXPORT = "export_second";
+  private static final String METRIC_EXPORT_CACHE_HIT = "export_cache_hit";
+  private static final String METRIC_EXPORT_CACHE_MISS = "export_cache_miss";
+  private static final String METRIC_EXPORT_CACHE_INCREMENTAL = "export_cache_incremental";
+  private static final String METRIC_IMPORT_STAGES = "import_stage_millisecond";
+
+  public static final String STAGE_PANTS_EXPORT = "pants_export";
+  public static final String STAGE_PARSE = "parse";
+  public static final String STAGE_DATA_IMPORT = "data_import";
+  public static final String STAGE_CLEAR_MODULES = "clear_modules";
+  public static final String STAGE_INDEXING = "indexing";
 
 
   @Nullable
@@ -94,10 +112,16 @@ public class PantsMetrics {
           counter = 0;
         }
         markIndexStart();
+        final Stopwatch indexWatch = Stopwatch.createStarted();
         DumbServiceImpl.getInstance(myProject).runWhenSmart(new Runnable() {
           @Override
           public void run() {
             markIndexEnd();
+            // Indexing covers all the linked projects at once, so it is recorded once for the IDE project.
+            final String basePath = myProject.getBasePath();
+            if (basePath != null) {
+              addStageTime(basePath, STAGE_INDEXING, indexWatch.elapsed(TimeUnit.MILLISECONDS));
+            }
             report();
           }
         });
@@ -144,6 +168,100 @@ public class PantsMetrics {
     stopWatch(timers.get(METRIC_EXPORT));
   }
 
+  public static void markExportCacheHit() {
+    incrementCounter(METRIC_EXPORT_CACHE_HIT);
+  }
+
+  public static void markExportCacheMiss() {
+    incrementCounter(METRIC_EXPORT_CACHE_MISS);
+  }
+
+  public static void markExportCacheIncremental() {
+    incrementCounter(METRIC_EXPORT_CACHE_INCREMENTAL);
+  }
+
+  /**
+   * Drops the stages recorded for the previous import of the project.
+   */
+  public static void markImportStart(@NotNull String projectPath) {
+    stages.remove(getStageKey(projectPath));
+  }
+
+  /**
+   * Starts timing an import stage of a project, to be used with try-with-resources.
+   * The time is added to the stage when the span is closed.
+   */
+  @NotNull
+  public static StageSpan startStage(@NotNull String projectPath, @NotNull String stage) {
+    return new StageSpan(projectPath, stage);
+  }
+
+  @NotNull
+  public static String modifierStage(@NotNull Object modifier) {
+    return "modifier:" + modifier.getClass().getSimpleName();
+  }
+
+  @NotNull
+  public static String resolverStage(@NotNull Object resolver) {
+    return "resolver:" + resolver.getClass().getSimpleName();
+  }
+
+  public static void addStageTime(@NotNull String projectPath, @NotNull String stage, long milliSeconds) {
+    final String stageKey = getStageKey(projectPath);
+    if (isMetricsEnabled()) {
+      stages.computeIfAbsent(stageKey, path -> new ConcurrentHashMap<>())
+        .computeIfAbsent(stage, name -> new AtomicLong())
+        .addAndGet(milliSeconds);
+    }
+    if (ApplicationManager.getApplication() != null) {
+      PantsExternalMetricsListenerManager.getInstance().logImportStageDuration(stageKey, stage, milliSeconds);
+    }
+  }
+
+  /**
+   * The same project is referred to by the path in its settings, the path of its executor or a symlink-resolved path,
+   * so stage times are keyed by the canonical path.
+   */
+  @NotNull
+  private static String getStageKey(@NotNull String projectPath) {
+    try {
+      return new File(projectPath).getCanonicalPath();
+    }
+    catch (IOException e) {
+      return FileUtil.toCanonicalPath(projectPath);
+    }
+  }
+
+  /**
+   * @return project path to import stage to milliseconds spent in it.
+   */
+  @NotNull
+  public static Map<String, Map<String, Long>> getStageTimes() {
+    final Map<String, Map<String, Long>> result = new TreeMap<>();
+    stages.forEach((projectPath, projectStages) -> {
+      final Map<String, Long> times = new TreeMap<>();
+      projectStages.forEach((stage, value) -> times.put(stage, value.get()));
+      result.put(projectPath, times);
+    });
+    return result;
+  }
+
+  public static class StageSpan implements AutoCloseable {
+    private final String myProjectPath;
+    private final String myStage;
+    private final Stopwatch myStopwatch = Stopwatch.createStarted();
+
+    private StageSpan(@NotNull String projectPath, @NotNull String stage) {
+      myProjectPath = projectPath;
+      myStage = stage;
+    }
+
+    @Override
+    public void close() {
+      addStageTime(myProjectPath, myStage, myStopwatch.elapsed(TimeUnit.MILLISECONDS));
+    }
+  }
+
   public static void markIndexStart() {
     startWatch(timers.get(METRIC_INDEXING));
   }
@@ -156,7 +274,8 @@ public class PantsMetrics {
     if (!isMetricsEnabled()) {
       return;
     }
-    Map<String, Long> report = getCurrentResult();
+    Map<String, Object> report = new HashMap<>(getCurrentResult());
+    report.put(METRIC_IMPORT_STAGES, getStageTimes());
     System.out.println(report);
     String reportFilePath = getReportFilePath();
     if (reportFilePath == null) {
@@ -171,7 +290,10 @@ public class PantsMetrics {
   }
 
   public static Map<String, Long> getCurrentResult() {
-    return timers.entrySet().stream().collect(Collectors.toMap(Map.Entry::getKey, entry -> entry.getValue().elapsed(TimeUnit.SECONDS)));
+    Map<String, Long> result =
+      timers.entrySet().stream().collect(Collectors.toMap(Map.Entry::getKey, entry -> entry.getValue().elapsed(TimeUnit.SECONDS)));
+    counters.forEach((name, value) -> result.put(name, value.get()));
+    return result;
   }
 
 
@@ -191,6 +313,17 @@ public class PantsMetrics {
     stopwatch.start();
   }
 
+  private static void incrementCounter(String name) {
+    addToCounter(name, 1);
+  }
+
+  private static void addToCounter(String name, long delta) {
+    if (!isMetricsEnabled()) {
+      return;
+    }
+    counters.computeIfAbsent(name, key -> new AtomicLong()).addAndGet(delta);
+  }
+
   private static void stopWatch(Stopwatch stopwatch) {
     if (!isMetricsEnabled()) {
       return;
@@ -3,6 +3,7 @@
 
 package com.twitter.intellij.pants.service;
 
+import com.google.common.collect.ImmutableMap;
 import com.intellij.execution.ExecutionException;
 import com.intellij.execution.configurations.GeneralCommandLine;
 import com.intellij.execution.process.ProcessAdapter;
@@ -10,6 +11,7 @@ import com.intellij.execution.process.ProcessOutput;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.externalSystem.model.ExternalSystemException;
 import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.openapi.vfs.VfsUtil;
 import com.intellij.util.Consumer;
 import com.intellij.util.PathUtil;
@@ -20,7 +22,9 @@ import com.twitter.intellij.pants.metrics.PantsMetrics;
 import com.twitter.intellij.pants.model.IJRC;
 import com.twitter.intellij.pants.model.PantsCompileOptions;
 import com.twitter.intellij.pants.model.PantsExecutionOptions;
+import com.twitter.intellij.pants.model.PantsOptions;
 import com.twitter.intellij.pants.settings.PantsExecutionSettings;
+import com.twitter.intellij.pants.util.PantsConstants;
 import com.twitter.intellij.pants.util.PantsUtil;
 import org.jetbrains.annotations.Nls;
 import org.jetbrains.annotations.NotNull;
@@ -30,20 +34,33 @@ import org.jetbrains.annotations.TestOnly;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 
 public class PantsCompileOptionsExecutor {
   protected static final Logger LOG = Logger.getInstance(PantsCompileOptionsExecutor.class);
   public static final int PROJECT_NAME_LIMIT = 200;
+  // Maps from the pants options holding the artifact caches to the flags setting them for a shard.
+  private static final Map<String, String> SHARED_CACHE_OPTIONS = ImmutableMap.of(
+    "ivy.cache_dir", "--ivy-cache-dir",
+    "coursier.cache_dir", "--coursier-cache-dir"
+  );
 
   private final List<Process> myProcesses = ContainerUtil.createConcurrentList();
 
   private final PantsCompileOptions myOptions;
   private final File myBuildRoot;
   private final boolean myResolveSourcesAndDocsForJars;
+  private final boolean myUseExportCache;
+  private final boolean myParallelResolve;
+  private final int myExportShards;
 
   @NotNull
   public static PantsCompileOptionsExecutor create(
@@ -59,17 +76,30 @@ public class PantsCompileOptionsExecutor {
     if (!buildRoot.isPresent() || !buildRoot.get().exists()) {
       throw new ExternalSystemException(PantsBundle.message("pants.error.no.pants.executable.by.path", options.getExternalProjectPath()));
     }
-    return new PantsCompileOptionsExecutor(buildRoot.get(), options, executionOptions.isLibsWithSourcesAndDocs());
+    return new PantsCompileOptionsExecutor(
+      buildRoot.get(),
+      options,
+      executionOptions.isLibsWithSourcesAndDocs(),
+      executionOptions.isUseExportCache(),
+      executionOptions.isParallelResolve(),
+      executionOptions.getExportShards()
+    );
   }
 
   private PantsCompileOptionsExecutor(
     @NotNull File buildRoot,
     @NotNull PantsCompileOptions compilerOptions,
-    boolean resolveSourcesAndDocsForJars
+    boolean resolveSourcesAndDocsForJars,
+    boolean useExportCache,
+    boolean parallelResolve,
+    int exportShards
   ) {
     myBuildRoot = buildRoot;
     myOptions = compilerOptions;
     myResolveSourcesAndDocsForJars = resolveSourcesAndDocsForJars;
+    myUseExportCache = useExportCache;
+    myParallelResolve = parallelResolve;
+    myExportShards = exportShards;
   }
 
   public String getProjectRelativePath() {
@@ -118,8 +148,28 @@ public class PantsCompileOptionsExecutor {
     return myOptions;
   }
 
+  public boolean isResolveSourcesAndDocsForJars() {
+    return myResolveSourcesAndDocsForJars;
+  }
+
+  public boolean isUseExportCache() {
+    return myUseExportCache;
+  }
+
+  public boolean isParallelResolve() {
+    return myParallelResolve;
+  }
+
+  public int getExportShards() {
+    return myExportShards;
+  }
+
+  /**
+   * @return a temporary file with the output of `pants export`, to be deleted by the caller once it is parsed.
+   * It is read in a streaming fashion later on, so the whole output is never held in memory as a single string.
+   */
   @NotNull
-  public String loadProjectStructure(
+  public File loadProjectStructure(
     @NotNull Consumer<String> statusConsumer,
     @Nullable ProcessAdapter processAdapter
   ) throws IOException, ExecutionException {
@@ -127,12 +177,194 @@ public class PantsCompileOptionsExecutor {
       return loadProjectStructureFromScript(getProjectPath(), statusConsumer, processAdapter);
     }
     else {
-      return loadProjectStructureFromTargets(statusConsumer, processAdapter);
+      return loadProjectStructureFromTargets(getTargetSpecs(), statusConsumer, processAdapter);
     }
   }
 
+  /**
+   * Same as {@link #loadProjectStructure} but splits the imported target specs between up to {@link #getExportShards()}
+   * `pants export` processes running at the same time. Each process gets its own pants workdir and doesn't take
+   * the global pants lock, so the processes don't wait for each other.
+   * <p>
+   * The workdir of a shard is kept and reused by the next import with the same shard index, so only the first sharded
+   * import resolves from scratch, at the cost of disk space for up to {@link #getExportShards()} extra workdirs.
+   * The downloaded artifacts are shared with the main workdir, see {@link #SHARED_CACHE_OPTIONS}.
+   *
+   * @return outputs of the processes in the same order for the same target specs, a single one if the specs are not split.
+   */
   @NotNull
-  private static String loadProjectStructureFromScript(
+  public List<File> loadProjectStructureShards(
+    @NotNull Consumer<String> statusConsumer,
+    @Nullable ProcessAdapter processAdapter
+  ) throws IOException, ExecutionException {
+    final List<List<String>> shards = splitIntoShards(getTargetSpecs(), myExportShards);
+    // Jars of source dependencies would end up in the workdirs of the shards.
+    if (PantsUtil.isExecutable(getProjectPath()) || getOptions().isImportSourceDepsAsJars() || shards.size() <= 1) {
+      return Collections.singletonList(loadProjectStructure(statusConsumer, processAdapter));
+    }
+
+    statusConsumer.consume(String.format("Resolving dependencies in %d pants processes...", shards.size()));
+    final ExecutorService pool = Executors.newFixedThreadPool(shards.size(), r -> new Thread(r, "Pants-Export-Shard"));
+    PantsMetrics.markExportStart();
+    try (PantsMetrics.StageSpan ignored = PantsMetrics.startStage(getProjectPath(), PantsMetrics.STAGE_PANTS_EXPORT)) {
+      final PantsOptions pantsOptions = getPantsOptions();
+      final File shardsWorkdir = new File(getPantsWorkdir(pantsOptions), "export-shards");
+      deleteUnusedShardWorkdirs(shardsWorkdir, shards.size());
+      final List<Future<File>> futures = new ArrayList<>();
+      for (int i = 0; i < shards.size(); i++) {
+        final List<String> shard = shards.get(i);
+        final List<String> shardOptions = getShardOptions(new File(shardsWorkdir, String.valueOf(i)), pantsOptions);
+        // Statuses of the shards interleave, so each one says which shard it comes from.
+        final String statusPrefix = String.format("[%d/%d] ", i + 1, shards.size());
+        final Consumer<String> shardStatusConsumer = status -> statusConsumer.consume(statusPrefix + status);
+        futures.add(pool.submit(() -> exportTargets(shard, shardOptions, shardStatusConsumer)));
+      }
+      final List<File> result = new ArrayList<>();
+      boolean succeeded = false;
+      try {
+        for (Future<File> future : futures) {
+          result.add(getShardOutput(future, futures));
+        }
+        succeeded = true;
+        return result;
+      }
+      finally {
+        // The caller only deletes the outputs it gets.
+        if (!succeeded) {
+          result.forEach(FileUtil::delete);
+          for (Future<File> future : futures.subList(result.size(), futures.size())) {
+            if (future.isDone() && !future.isCancelled()) {
+              try {
+                FileUtil.delete(future.get());
+              }
+              catch (InterruptedException | java.util.concurrent.ExecutionException ignored) {
+              }
+            }
+          }
+        }
+      }
+    }
+    finally {
+      pool.shutdownNow();
+      PantsMetrics.markExportEnd();
+    }
+  }
+
+  /**
+   * Splits the sorted specs into contiguous groups, so specs of nearby directories, which likely share
+   * most of their dependencies, end up in the same process.
+   */
+  @NotNull
+  private static List<List<String>> splitIntoShards(@NotNull List<String> targetSpecs, int shardCount) {
+    final List<String> sortedSpecs = new ArrayList<>(targetSpecs);
+    Collections.sort(sortedSpecs);
+    final int count = Math.max(1, Math.min(shardCount, sortedSpecs.size()));
+    final List<List<String>> result = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      result.add(sortedSpecs.subList(i * sortedSpecs.size() / count, (i + 1) * sortedSpecs.size() / count));
+    }
+    return result;
+  }
+
+  @Nullable
+  private PantsOptions getPantsOptions() {
+    return PantsUtil.findPantsExecutable(getProjectPath())
+      .map(pantsExecutable -> PantsOptions.getPantsOptions(pantsExecutable.getPath()))
+      .orElse(null);
+  }
+
+  @NotNull
+  private File getPantsWorkdir(@Nullable PantsOptions pantsOptions) {
+    return Optional.ofNullable(pantsOptions)
+      .flatMap(options -> options.get(PantsConstants.PANTS_OPTION_PANTS_WORKDIR))
+      .map(File::new)
+      .orElseGet(() -> new File(getBuildRoot(), ".pants.d"));
+  }
+
+  /**
+   * Nothing else uses the workdir of a shard, so the lock that guards the shared one isn't needed.
+   * The artifact caches are passed explicitly, so they stay shared even if pants.ini puts them under the workdir.
+   */
+  @NotNull
+  private static List<String> getShardOptions(@NotNull File shardWorkdir, @Nullable PantsOptions pantsOptions) {
+    final List<String> result = new ArrayList<>();
+    result.add("--pants-workdir=" + shardWorkdir.getPath());
+    result.add("--no-lock");
+    if (pantsOptions != null) {
+      for (Map.Entry<String, String> option : SHARED_CACHE_OPTIONS.entrySet()) {
+        pantsOptions.get(option.getKey()).ifPresent(value -> result.add(option.getValue() + "=" + value));
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Deletes the workdirs of shards that don't exist any more, e.g. after the number of shards was lowered.
+   */
+  private static void deleteUnusedShardWorkdirs(@NotNull File shardsWorkdir, int shardCount) {
+    final File[] shardWorkdirs = shardsWorkdir.listFiles();
+    if (shardWorkdirs == null) {
+      return;
+    }
+    for (File shardWorkdir : shardWorkdirs) {
+      final int index = StringUtil.parseInt(shardWorkdir.getName(), -1);
+      if (index < 0 || index >= shardCount) {
+        FileUtil.delete(shardWorkdir);
+      }
+    }
+  }
+
+  /**
+   * Stops all the other export processes as soon as one of them fails.
+   */
+  @NotNull
+  private File getShardOutput(@NotNull Future<File> future, @NotNull List<Future<File>> allFutures)
+    throws IOException, ExecutionException {
+    try {
+      return future.get();
+    }
+    catch (InterruptedException e) {
+      cancelShards(allFutures);
+      Thread.currentThread().interrupt();
+      throw new ExecutionException(e);
+    }
+    catch (java.util.concurrent.ExecutionException e) {
+      cancelShards(allFutures);
+      final Throwable cause = e.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      }
+      if (cause instanceof ExecutionException) {
+        throw (ExecutionException) cause;
+      }
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      throw new ExecutionException(cause);
+    }
+  }
+
+  private void cancelShards(@NotNull List<Future<File>> futures) {
+    // Shards that haven't started their process yet must not start it after the running ones are destroyed.
+    futures.forEach(future -> future.cancel(true));
+    cancelAllProcesses();
+  }
+
+  /**
+   * Same as {@link #loadProjectStructure} but exports only the given target specs instead of the imported ones.
+   * Used to refresh part of an already resolved project.
+   */
+  @NotNull
+  public File loadProjectStructure(
+    @NotNull List<String> targetSpecs,
+    @NotNull Consumer<String> statusConsumer,
+    @Nullable ProcessAdapter processAdapter
+  ) throws IOException, ExecutionException {
+    return loadProjectStructureFromTargets(targetSpecs, statusConsumer, processAdapter);
+  }
+
+  @NotNull
+  private File loadProjectStructureFromScript(
     @NotNull String scriptPath,
     @NotNull Consumer<String> statusConsumer,
     @Nullable ProcessAdapter processAdapter
@@ -140,9 +372,14 @@ public class PantsCompileOptionsExecutor {
     final GeneralCommandLine commandLine = PantsUtil.defaultCommandLine(scriptPath);
     commandLine.setExePath(scriptPath);
     statusConsumer.consume("Executing " + PathUtil.getFileName(scriptPath));
-    final ProcessOutput processOutput = PantsUtil.getCmdOutput(commandLine, processAdapter);
+    final ProcessOutput processOutput;
+    try (PantsMetrics.StageSpan ignored = PantsMetrics.startStage(getProjectPath(), PantsMetrics.STAGE_PANTS_EXPORT)) {
+      processOutput = PantsUtil.getCmdOutput(commandLine, processAdapter);
+    }
     if (processOutput.checkSuccess(LOG)) {
-      return processOutput.getStdout();
+      final File outputFile = FileUtil.createTempFile("pants_script_run", ".out");
+      FileUtil.writeToFile(outputFile, processOutput.getStdout());
+      return outputFile;
     }
     else {
       throw new PantsExecutionException("Failed to update the project!", scriptPath, processOutput);
@@ -150,39 +387,70 @@ public class PantsCompileOptionsExecutor {
   }
 
   @NotNull
-  private String loadProjectStructureFromTargets(
+  private File loadProjectStructureFromTargets(
+    @NotNull List<String> targetSpecs,
     @NotNull Consumer<String> statusConsumer,
     @Nullable ProcessAdapter processAdapter
   ) throws IOException, ExecutionException {
-    final File outputFile = FileUtil.createTempFile("pants_depmap_run", ".out");
-    final GeneralCommandLine command = getPantsExportCommand(outputFile, statusConsumer);
     statusConsumer.consume("Resolving dependencies...");
     PantsMetrics.markExportStart();
-    final ProcessOutput processOutput = getProcessOutput(command);
-    PantsMetrics.markExportEnd();
-    if (processOutput.getStdout().contains("no such option")) {
-      throw new ExternalSystemException("Pants doesn't have necessary APIs. Please upgrade your pants!");
+    try (PantsMetrics.StageSpan ignored = PantsMetrics.startStage(getProjectPath(), PantsMetrics.STAGE_PANTS_EXPORT)) {
+      return exportTargets(targetSpecs, Collections.emptyList(), statusConsumer);
     }
-    if (processOutput.checkSuccess(LOG)) {
-      return FileUtil.loadFile(outputFile);
+    finally {
+      PantsMetrics.markExportEnd();
     }
-    else {
-      throw new PantsExecutionException("Failed to update the project!", command.getCommandLineString("pants"), processOutput);
+  }
+
+  @NotNull
+  private File exportTargets(
+    @NotNull List<String> targetSpecs,
+    @NotNull List<String> extraOptions,
+    @NotNull Consumer<String> statusConsumer
+  ) throws IOException, ExecutionException {
+    final File outputFile = FileUtil.createTempFile("pants_depmap_run", ".out");
+    final File targetSpecsFile = FileUtil.createTempFile("pants_target_specs", ".in");
+    boolean succeeded = false;
+    try {
+      final GeneralCommandLine command = getPantsExportCommand(targetSpecs, extraOptions, targetSpecsFile, outputFile, statusConsumer);
+      final ProcessOutput processOutput = getProcessOutput(command, new PantsExportProgressParser(getProjectPath(), statusConsumer));
+      if (processOutput.getStdout().contains("no such option")) {
+        throw new ExternalSystemException("Pants doesn't have necessary APIs. Please upgrade your pants!");
+      }
+      if (!processOutput.checkSuccess(LOG)) {
+        throw new PantsExecutionException("Failed to update the project!", command.getCommandLineString("pants"), processOutput);
+      }
+      succeeded = true;
+      return outputFile;
+    }
+    finally {
+      FileUtil.delete(targetSpecsFile);
+      // On success the caller deletes the output once it is parsed.
+      if (!succeeded) {
+        FileUtil.delete(outputFile);
+      }
     }
   }
 
   private ProcessOutput getProcessOutput(
-    @NotNull GeneralCommandLine command
+    @NotNull GeneralCommandLine command,
+    @Nullable ProcessAdapter processAdapter
   ) throws ExecutionException {
     final Process process = command.createProcess();
     myProcesses.add(process);
-    final ProcessOutput processOutput = PantsUtil.getCmdOutput(process, command.getCommandLineString(), null);
+    final ProcessOutput processOutput = PantsUtil.getCmdOutput(process, command.getCommandLineString(), processAdapter);
     myProcesses.remove(process);
     return processOutput;
   }
 
   @NotNull
-  private GeneralCommandLine getPantsExportCommand(final File outputFile, @NotNull Consumer<String> statusConsumer)
+  private GeneralCommandLine getPantsExportCommand(
+    @NotNull List<String> targetSpecs,
+    @NotNull List<String> extraOptions,
+    @NotNull File targetSpecsFile,
+    final File outputFile,
+    @NotNull Consumer<String> statusConsumer
+  )
     throws IOException {
     final GeneralCommandLine commandLine = PantsUtil.defaultCommandLine(getProjectPath());
 
@@ -190,9 +458,10 @@ public class PantsCompileOptionsExecutor {
     Optional<String> rcArg = IJRC.getImportPantsRc(commandLine.getWorkDirectory().getPath());
     rcArg.ifPresent(commandLine::addParameter);
 
-    final File targetSpecsFile = FileUtil.createTempFile("pants_target_specs", ".in");
+    commandLine.addParameters(extraOptions);
+
     try (FileWriter targetSpecsFileWriter = new FileWriter(targetSpecsFile)) {
-      for (String targetSpec : getTargetSpecs()) {
+      for (String targetSpec : targetSpecs) {
         targetSpecsFileWriter.write(targetSpec);
         targetSpecsFileWriter.write('\n');
       }
@@ -226,7 +495,7 @@ public class PantsCompileOptionsExecutor {
   }
 
   @NotNull
-  private List<String> getTargetSpecs() {
+  public List<String> getTargetSpecs() {
     // If project is opened via pants cli, the targets are in specs.
     return Collections.unmodifiableList(getOptions().getSelectedTargetSpecs());
   }
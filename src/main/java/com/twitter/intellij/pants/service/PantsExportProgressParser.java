@@ -0,0 +1,124 @@
+// Copyright 2023 Pants project contributors (see CONTRIBUTORS.md).
+// Licensed under the Apache License, Version 2.0 (see LICENSE).
+
+package com.twitter.intellij.pants.service;
+
+import com.google.common.base.Stopwatch;
+import com.intellij.execution.process.ProcessAdapter;
+import com.intellij.execution.process.ProcessEvent;
+import com.intellij.execution.process.ProcessOutputTypes;
+import com.intellij.openapi.util.Key;
+import com.intellij.util.Consumer;
+import com.twitter.intellij.pants.metrics.PantsMetrics;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Follows the goals pants prints while running `export`, e.g. `12:00:01 00:02   [coursier]`,
+ * reports the current phase in the import status text, and records how long each phase took.
+ */
+public class PantsExportProgressParser extends ProcessAdapter {
+  private static final Pattern GOAL_PATTERN = Pattern.compile("\\[([a-z][a-z0-9-]*)]");
+
+  enum Phase {
+    BOOTSTRAP("Bootstrapping pants", "bootstrap"),
+    RESOLVE("Resolving dependencies", "resolve"),
+    FETCH("Fetching libraries", "ivy", "ivy-resolve", "coursier"),
+    EXPORT("Exporting project structure", "export", "export-dep-as-jar");
+
+    private final String myDescription;
+    private final String[] myGoals;
+
+    Phase(@NotNull String description, @NotNull String... goals) {
+      myDescription = description;
+      myGoals = goals;
+    }
+
+    @Nullable
+    static Phase forGoal(@NotNull String goal) {
+      for (Phase phase : values()) {
+        for (String phaseGoal : phase.myGoals) {
+          if (phaseGoal.equals(goal)) {
+            return phase;
+          }
+        }
+      }
+      return null;
+    }
+  }
+
+  private final String myProjectPath;
+  private final Consumer<String> myStatusConsumer;
+  private final Map<Key, StringBuilder> myPartialLines = new HashMap<>();
+  @Nullable
+  private Phase myPhase = null;
+  private final Stopwatch myPhaseStopwatch = Stopwatch.createUnstarted();
+
+  public PantsExportProgressParser(
+    @NotNull String projectPath,
+    @NotNull Consumer<String> statusConsumer
+  ) {
+    myProjectPath = projectPath;
+    myStatusConsumer = statusConsumer;
+  }
+
+  @Override
+  public void onTextAvailable(@NotNull ProcessEvent event, @NotNull Key outputType) {
+    if (outputType == ProcessOutputTypes.SYSTEM) {
+      return;
+    }
+    // stdout and stderr are read on different threads
+    synchronized (this) {
+      final StringBuilder partialLine = myPartialLines.computeIfAbsent(outputType, type -> new StringBuilder());
+      partialLine.append(event.getText());
+      int lineEnd;
+      while ((lineEnd = partialLine.indexOf("\n")) != -1) {
+        onLine(partialLine.substring(0, lineEnd));
+        partialLine.delete(0, lineEnd + 1);
+      }
+    }
+  }
+
+  @Override
+  public void processTerminated(@NotNull ProcessEvent event) {
+    synchronized (this) {
+      endPhase();
+    }
+  }
+
+  private void onLine(@NotNull String line) {
+    final Matcher matcher = GOAL_PATTERN.matcher(line);
+    if (!matcher.find()) {
+      return;
+    }
+    final Phase phase = Phase.forGoal(matcher.group(1));
+    // Goals of an earlier phase may show up again, e.g. a resolve for a single task, which doesn't move progress back.
+    if (phase == null || (myPhase != null && phase.ordinal() <= myPhase.ordinal())) {
+      return;
+    }
+    endPhase();
+    myPhase = phase;
+    myPhaseStopwatch.reset().start();
+    myStatusConsumer.consume(phase.myDescription + "...");
+  }
+
+  private void endPhase() {
+    if (myPhase == null) {
+      return;
+    }
+    PantsMetrics.addStageTime(
+      myProjectPath,
+      "export_phase:" + myPhase.name().toLowerCase(Locale.ROOT),
+      myPhaseStopwatch.elapsed(TimeUnit.MILLISECONDS)
+    );
+    myPhaseStopwatch.stop();
+    myPhase = null;
+  }
+}
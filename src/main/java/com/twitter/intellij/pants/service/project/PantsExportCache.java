@@ -0,0 +1,352 @@
+// Copyright 2023 Pants project contributors (see CONTRIBUTORS.md).
+// Licensed under the Apache License, Version 2.0 (see LICENSE).
+
+package com.twitter.intellij.pants.service.project;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.gson.JsonParseException;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.io.FileUtil;
+import com.twitter.intellij.pants.model.IJRC;
+import com.twitter.intellij.pants.model.PantsOptions;
+import com.twitter.intellij.pants.model.PantsTargetAddress;
+import com.twitter.intellij.pants.service.PantsCompileOptionsExecutor;
+import com.twitter.intellij.pants.service.project.model.ProjectInfo;
+import com.twitter.intellij.pants.service.project.model.ProjectInfoWriter;
+import com.twitter.intellij.pants.util.PantsConstants;
+import com.twitter.intellij.pants.util.PantsUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * On-disk cache of `pants export` results under `.idea/pants-projects/export-cache`.
+ * <p>
+ * An entry is keyed by the target specs, the pants version and the export flags. Next to the export it records
+ * a fingerprint of pants.toml/pants.ini/.ij.import.rc and one fingerprint per directory whose BUILD files
+ * the export depends on: the directories of every exported target and the ones covered by the target specs.
+ * The entry can be reused as is while nothing changed, and only the changed directories need to be
+ * re-exported while the config files are unchanged.
+ * <p>
+ * Fingerprints are taken before pants runs, so a BUILD file edited during the export makes the entry stale
+ * instead of being recorded as already exported.
+ */
+public class PantsExportCache {
+  private static final Logger LOG = Logger.getInstance(PantsExportCache.class);
+
+  private static final String CACHE_DIR_NAME = "export-cache";
+  private static final String EXPORT_FILE_NAME = "export.json";
+  private static final String ENTRY_FILE_NAME = "entry.json";
+  // Stored for a directory whose BUILD files changed during the export. Never equal to a real fingerprint.
+  private static final String CHANGED_DURING_EXPORT = "changed-during-export";
+  // Some file systems only keep modification times with a precision of seconds.
+  private static final long MODIFICATION_TIME_PRECISION_MILLIS = 2000;
+
+  private final PantsCompileOptionsExecutor myExecutor;
+  private final File myEntryDir;
+
+  private PantsExportCache(@NotNull PantsCompileOptionsExecutor executor, @NotNull String key) {
+    myExecutor = executor;
+    myEntryDir = Paths.get(executor.getBuildRoot().getPath(), ".idea", "pants-projects", CACHE_DIR_NAME, key).toFile();
+  }
+
+  /**
+   * @return the cache for the executor's import, or empty if caching is disabled or the project is imported from a script.
+   */
+  @NotNull
+  public static Optional<PantsExportCache> forExecutor(@NotNull PantsCompileOptionsExecutor executor) {
+    if (!executor.isUseExportCache() || PantsUtil.isExecutable(executor.getProjectPath())) {
+      return Optional.empty();
+    }
+    final Hasher hasher = Hashing.sha256().newHasher();
+    for (String spec : executor.getOptions().getSelectedTargetSpecs()) {
+      hasher.putString(spec, StandardCharsets.UTF_8).putChar('\n');
+    }
+    final String pantsVersion = PantsUtil.findPantsExecutable(executor.getProjectPath())
+      .flatMap(exec -> PantsOptions.getPantsOptions(exec.getPath()).get("pants_version"))
+      .orElse("");
+    hasher
+      .putString(pantsVersion, StandardCharsets.UTF_8)
+      .putBoolean(executor.getOptions().isImportSourceDepsAsJars())
+      .putBoolean(executor.isResolveSourcesAndDocsForJars())
+      .putInt(PantsResolver.VERSION);
+    return Optional.of(new PantsExportCache(executor, hasher.hash().toString()));
+  }
+
+  /**
+   * @return the cached export output together with the directories whose BUILD files changed since it was stored,
+   * or empty if there is no entry or the pants config files changed.
+   */
+  @NotNull
+  public Optional<CachedExport> lookup() {
+    final File exportFile = new File(myEntryDir, EXPORT_FILE_NAME);
+    final File entryFile = new File(myEntryDir, ENTRY_FILE_NAME);
+    if (!exportFile.isFile() || !entryFile.isFile()) {
+      return Optional.empty();
+    }
+    try (Reader reader = new FileReader(entryFile, StandardCharsets.UTF_8)) {
+      final Entry entry = PantsUtil.gson.fromJson(reader, Entry.class);
+      if (entry == null || entry.buildFileFingerprints == null) {
+        return Optional.empty();
+      }
+      final Fingerprints currentFingerprints = takeFingerprints(entry.buildFileFingerprints.keySet());
+      if (!currentFingerprints.myConfigFingerprint.equals(entry.configFingerprint)) {
+        LOG.debug("Pants export cache is stale for " + myEntryDir);
+        return Optional.empty();
+      }
+      final Set<String> changedDirs = new TreeSet<>();
+      for (Map.Entry<String, String> dirAndFingerprint : currentFingerprints.myBuildFileFingerprints.entrySet()) {
+        if (!dirAndFingerprint.getValue().equals(entry.buildFileFingerprints.get(dirAndFingerprint.getKey()))) {
+          changedDirs.add(dirAndFingerprint.getKey());
+        }
+      }
+      return Optional.of(new CachedExport(exportFile, changedDirs, currentFingerprints));
+    }
+    catch (IOException | JsonParseException e) {
+      LOG.warn("Failed to read pants export cache entry " + entryFile, e);
+      return Optional.empty();
+    }
+  }
+
+  /**
+   * @return fingerprints of the config files and of the BUILD files covered by the target specs,
+   * to be taken before running an export and passed to {@link #store}.
+   */
+  @NotNull
+  public Fingerprints takeFingerprints() {
+    return takeFingerprints(Collections.emptySet());
+  }
+
+  @NotNull
+  private Fingerprints takeFingerprints(@NotNull Collection<String> buildFileDirs) {
+    final long takenAtMillis = System.currentTimeMillis();
+    final Set<String> dirs = new TreeSet<>(buildFileDirs);
+    dirs.addAll(getSpecDirs());
+    return new Fingerprints(configFingerprint(), buildFileFingerprints(dirs), takenAtMillis);
+  }
+
+  /**
+   * Stores the freshly exported output together with the fingerprints of every BUILD file it was computed from.
+   *
+   * @param exportOutput output file of `pants export`.
+   * @param projectInfo  project info parsed from exportOutput, before any modifier ran.
+   * @param fingerprints taken before the export was started.
+   */
+  public void store(@NotNull File exportOutput, @NotNull ProjectInfo projectInfo, @NotNull Fingerprints fingerprints) {
+    try {
+      FileUtil.createDirectory(myEntryDir);
+      Files.copy(exportOutput.toPath(), new File(myEntryDir, EXPORT_FILE_NAME).toPath(), StandardCopyOption.REPLACE_EXISTING);
+      writeEntry(projectInfo, fingerprints);
+    }
+    catch (IOException e) {
+      LOG.warn("Failed to store pants export cache entry in " + myEntryDir, e);
+      FileUtil.delete(myEntryDir);
+    }
+  }
+
+  /**
+   * Same as {@link #store(File, ProjectInfo, Fingerprints)} for a project info that does not come from a single export,
+   * e.g. one that was updated with a partial export.
+   */
+  public void store(@NotNull ProjectInfo projectInfo, @NotNull Fingerprints fingerprints) {
+    try {
+      FileUtil.createDirectory(myEntryDir);
+      ProjectInfoWriter.write(projectInfo, new File(myEntryDir, EXPORT_FILE_NAME));
+      writeEntry(projectInfo, fingerprints);
+    }
+    catch (IOException e) {
+      LOG.warn("Failed to store pants export cache entry in " + myEntryDir, e);
+      FileUtil.delete(myEntryDir);
+    }
+  }
+
+  /**
+   * Directories of exported targets that weren't fingerprinted before the export, e.g. the ones of dependencies,
+   * are fingerprinted now. Those with a BUILD file modified since the fingerprints were taken are recorded as changed.
+   */
+  private void writeEntry(@NotNull ProjectInfo projectInfo, @NotNull Fingerprints fingerprints) throws IOException {
+    final Set<String> newBuildFileDirs = new TreeSet<>();
+    for (String targetAddress : projectInfo.getTargets().keySet()) {
+      PantsTargetAddress.extractPath(targetAddress)
+        .filter(dir -> !fingerprints.myBuildFileFingerprints.containsKey(dir))
+        .ifPresent(newBuildFileDirs::add);
+    }
+    final Map<String, String> buildFileFingerprints = new TreeMap<>(fingerprints.myBuildFileFingerprints);
+    // Hashed before the modification times are checked, so an edit in between is caught by the check.
+    buildFileFingerprints.putAll(buildFileFingerprints(newBuildFileDirs));
+    final long modifiedSince = fingerprints.myTakenAtMillis - MODIFICATION_TIME_PRECISION_MILLIS;
+    for (String dir : newBuildFileDirs) {
+      final File[] buildFiles = listBuildFiles(dir);
+      if (buildFiles != null && Arrays.stream(buildFiles).anyMatch(file -> file.lastModified() >= modifiedSince)) {
+        buildFileFingerprints.put(dir, CHANGED_DURING_EXPORT);
+      }
+    }
+    final Entry entry = new Entry();
+    entry.configFingerprint = fingerprints.myConfigFingerprint;
+    entry.buildFileFingerprints = buildFileFingerprints;
+    try (Writer writer = new FileWriter(new File(myEntryDir, ENTRY_FILE_NAME), StandardCharsets.UTF_8)) {
+      PantsUtil.gson.toJson(entry, writer);
+    }
+  }
+
+  @NotNull
+  private String configFingerprint() {
+    final Hasher hasher = Hashing.murmur3_128().newHasher();
+    for (String configFile : Arrays.asList(PantsConstants.PANTS_TOML, PantsConstants.PANTS_INI, IJRC.IMPORT_RC_FILENAME)) {
+      hashFile(hasher, new File(myExecutor.getBuildRoot(), configFile));
+    }
+    return hasher.hash().toString();
+  }
+
+  /**
+   * @return directories covered by the target specs, recursively for `::` specs so newly added targets are picked up.
+   */
+  @NotNull
+  private Set<String> getSpecDirs() {
+    final Set<String> dirs = new TreeSet<>();
+    for (String spec : myExecutor.getOptions().getSelectedTargetSpecs()) {
+      if (spec.endsWith("::")) {
+        collectBuildFileDirs(myExecutor.getBuildRoot(), specPath(spec, "::"), dirs);
+      }
+      else {
+        dirs.add(specPath(spec, ":"));
+      }
+    }
+    return dirs;
+  }
+
+  /**
+   * Fingerprints of the BUILD files in the given directories. A directory without BUILD files gets an empty fingerprint.
+   */
+  @NotNull
+  private Map<String, String> buildFileFingerprints(@NotNull Collection<String> dirs) {
+    final Map<String, String> result = new TreeMap<>();
+    for (String dir : dirs) {
+      final File[] buildFiles = listBuildFiles(dir);
+      if (buildFiles == null || buildFiles.length == 0) {
+        result.put(dir, "");
+        continue;
+      }
+      Arrays.sort(buildFiles);
+      final Hasher hasher = Hashing.murmur3_128().newHasher();
+      for (File buildFile : buildFiles) {
+        hashFile(hasher, buildFile);
+      }
+      result.put(dir, hasher.hash().toString());
+    }
+    return result;
+  }
+
+  @Nullable
+  private File[] listBuildFiles(@NotNull String dir) {
+    return new File(myExecutor.getBuildRoot(), dir).listFiles(file -> file.isFile() && PantsUtil.isBUILDFileName(file.getName()));
+  }
+  @NotNull
+  private static String specPath(@NotNull String spec, @NotNull String separator) {
+    final int index = spec.lastIndexOf(separator);
+    final String path = index < 0 ? spec : spec.substring(0, index);
+    return path.endsWith("/") ? path.substring(0, path.length() - 1) : path;
+  }
+
+  private static void collectBuildFileDirs(@NotNull File buildRoot, @NotNull String relativePath, @NotNull Set<String> result) {
+    final File dir = new File(buildRoot, relativePath);
+    final File[] children = dir.listFiles();
+    if (children == null) {
+      return;
+    }
+    for (File child : children) {
+      if (child.isDirectory()) {
+        // Skip hidden folders such as .pants.d and .idea
+        if (!child.getName().startsWith(".")) {
+          collectBuildFileDirs(buildRoot, relativePath.isEmpty() ? child.getName() : relativePath + "/" + child.getName(), result);
+        }
+      }
+      else if (PantsUtil.isBUILDFileName(child.getName())) {
+        result.add(relativePath);
+      }
+    }
+  }
+
+  private static void hashFile(@NotNull Hasher hasher, @NotNull File file) {
+    hasher.putString(file.getName(), StandardCharsets.UTF_8);
+    try {
+      hasher.putBytes(Files.readAllBytes(file.toPath()));
+    }
+    catch (IOException e) {
+      hasher.putBoolean(false);
+    }
+  }
+
+  public static class CachedExport {
+    private final File myExportFile;
+    private final Set<String> myChangedBuildFileDirs;
+    private final Fingerprints myFingerprints;
+
+    private CachedExport(@NotNull File exportFile, @NotNull Set<String> changedBuildFileDirs, @NotNull Fingerprints fingerprints) {
+      myExportFile = exportFile;
+      myChangedBuildFileDirs = Collections.unmodifiableSet(changedBuildFileDirs);
+      myFingerprints = fingerprints;
+    }
+
+    /**
+     * @return fingerprints taken when the entry was looked up, to be stored with an export run after the lookup.
+     */
+    @NotNull
+    public Fingerprints getFingerprints() {
+      return myFingerprints;
+    }
+
+    @NotNull
+    public File getExportFile() {
+      return myExportFile;
+    }
+
+    /**
+     * @return relative paths of the directories whose BUILD files were changed, added or removed since the export.
+     */
+    @NotNull
+    public Set<String> getChangedBuildFileDirs() {
+      return myChangedBuildFileDirs;
+    }
+
+    public boolean isUpToDate() {
+      return myChangedBuildFileDirs.isEmpty();
+    }
+  }
+
+  public static class Fingerprints {
+    private final String myConfigFingerprint;
+    private final Map<String, String> myBuildFileFingerprints;
+    private final long myTakenAtMillis;
+
+    private Fingerprints(@NotNull String configFingerprint, @NotNull Map<String, String> buildFileFingerprints, long takenAtMillis) {
+      myConfigFingerprint = configFingerprint;
+      myBuildFileFingerprints = buildFileFingerprints;
+      myTakenAtMillis = takenAtMillis;
+    }
+  }
+
+  private static class Entry {
+    String configFingerprint;
+    Map<String, String> buildFileFingerprints;
+  }
+}
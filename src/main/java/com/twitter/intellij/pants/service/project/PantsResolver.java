@@ -13,18 +13,33 @@ import com.intellij.openapi.externalSystem.model.ExternalSystemException;
 import com.intellij.openapi.externalSystem.model.ProjectKeys;
 import com.intellij.openapi.externalSystem.model.project.ModuleData;
 import com.intellij.openapi.externalSystem.model.project.ProjectData;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.util.Consumer;
+import com.twitter.intellij.pants.metrics.PantsExternalMetricsListenerManager;
+import com.twitter.intellij.pants.metrics.PantsMetrics;
+import com.twitter.intellij.pants.model.PantsTargetAddress;
+import com.twitter.intellij.pants.model.TargetAddressInfo;
 import com.twitter.intellij.pants.service.PantsCompileOptionsExecutor;
 import com.twitter.intellij.pants.service.project.model.ProjectInfo;
+import com.twitter.intellij.pants.service.project.model.TargetInfo;
 import com.twitter.intellij.pants.util.PantsConstants;
 import com.twitter.intellij.pants.util.PantsUtil;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.jetbrains.annotations.TestOnly;
 
+import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
 
 public class PantsResolver {
   /**
@@ -33,8 +48,10 @@ public class PantsResolver {
    *
    * 16: with 'import dep as jar', allow all target types (except Python targets) to depend on libraries directly.
    *     Previously only JarLibrary targets can depend on libraries.
+   * 17: targets that resolve to the same jars share one project library, and libraries without jars are left out.
+   * 18: project libraries are always named after their jars, also when only one target resolves to them.
    */
-  public static final int VERSION = 16;
+  public static final int VERSION = 18;
 
   protected static final Logger LOG = Logger.getInstance(PantsResolver.class);
   protected final PantsCompileOptionsExecutor myExecutor;
@@ -45,13 +62,13 @@ public class PantsResolver {
   }
 
   public static ProjectInfo parseProjectInfoFromJSON(@NotNull String data) throws JsonSyntaxException {
-    final int jsonStart = data.indexOf("\n{");
-    if (jsonStart > 0) {
-      data = data.substring(jsonStart + 1);
-    }
     return ProjectInfo.fromJson(data);
   }
 
+  public static ProjectInfo parseProjectInfoFromJSON(@NotNull File file) throws IOException, JsonSyntaxException {
+    return ProjectInfo.fromJson(file);
+  }
+
   @Nullable
   public ProjectInfo getProjectInfo() {
     return myProjectInfo;
@@ -62,14 +79,30 @@ public class PantsResolver {
     myProjectInfo = projectInfo;
   }
 
-  private void parse(final String output) {
+  private void parse(@NotNull File output) throws IOException {
+    parse(Collections.singletonList(output));
+  }
+
+  /**
+   * Parses outputs of exporting different target specs of the same repo into a single project info.
+   */
+  private void parse(@NotNull List<File> outputs) throws IOException {
     myProjectInfo = null;
-    if (output.isEmpty()) throw new ExternalSystemException("Not output from pants");
-    try {
-      myProjectInfo = parseProjectInfoFromJSON(output);
+    final ProjectInfo projectInfo = parseOutput(outputs.get(0));
+    for (File output : outputs.subList(1, outputs.size())) {
+      projectInfo.merge(parseOutput(output));
+    }
+    myProjectInfo = projectInfo;
+  }
+
+  @NotNull
+  private ProjectInfo parseOutput(@NotNull File output) throws IOException {
+    if (output.length() == 0) throw new ExternalSystemException("Not output from pants");
+    try (PantsMetrics.StageSpan ignored = PantsMetrics.startStage(myExecutor.getProjectPath(), PantsMetrics.STAGE_PARSE)) {
+      return parseProjectInfoFromJSON(output);
     }
     catch (JsonSyntaxException e) {
-      LOG.warn("Can't parse output\n" + output, e);
+      LOG.warn("Can't parse output " + output.getPath(), e);
       throw new ExternalSystemException("Can't parse project structure!");
     }
   }
@@ -79,28 +112,193 @@ public class PantsResolver {
     @Nullable ProcessAdapter processAdapter
   ) {
     try {
-      String pantsExportResult = myExecutor.loadProjectStructure(statusConsumer, processAdapter);
-      parse(pantsExportResult);
+      final Optional<PantsExportCache> exportCache = PantsExportCache.forExecutor(myExecutor);
+      final Optional<PantsExportCache.CachedExport> cachedExport = exportCache.flatMap(PantsExportCache::lookup);
+      if (cachedExport.isPresent() && cachedExport.get().isUpToDate()) {
+        statusConsumer.consume("Using cached pants export...");
+        PantsMetrics.markExportCacheHit();
+        PantsExternalMetricsListenerManager.getInstance().logEvent("EXPORT_CACHE_HIT");
+        parse(cachedExport.get().getExportFile());
+        return;
+      }
+      if (cachedExport.isPresent() && resolveIncrementally(exportCache.get(), cachedExport.get(), statusConsumer, processAdapter)) {
+        PantsMetrics.markExportCacheIncremental();
+        PantsExternalMetricsListenerManager.getInstance().logEvent("EXPORT_CACHE_INCREMENTAL");
+        return;
+      }
+      if (exportCache.isPresent()) {
+        PantsMetrics.markExportCacheMiss();
+        PantsExternalMetricsListenerManager.getInstance().logEvent("EXPORT_CACHE_MISS");
+      }
+      // Taken before pants runs, so BUILD files edited during the export are picked up by the next import.
+      final Optional<PantsExportCache.Fingerprints> fingerprints = cachedExport
+        .map(PantsExportCache.CachedExport::getFingerprints)
+        .or(() -> exportCache.map(PantsExportCache::takeFingerprints));
+      final List<File> pantsExportResults = myExecutor.loadProjectStructureShards(statusConsumer, processAdapter);
+      try {
+        parse(pantsExportResults);
+        if (exportCache.isPresent() && fingerprints.isPresent()) {
+          if (pantsExportResults.size() == 1) {
+            exportCache.get().store(pantsExportResults.get(0), myProjectInfo, fingerprints.get());
+          }
+          else {
+            exportCache.get().store(myProjectInfo, fingerprints.get());
+          }
+        }
+      }
+      finally {
+        // The cache keeps its own copy.
+        pantsExportResults.forEach(FileUtil::delete);
+      }
     }
     catch (ExecutionException | IOException e) {
       throw new ExternalSystemException(e);
     }
   }
 
-  public void addInfoTo(@NotNull DataNode<ProjectData> projectInfoDataNode) {
-    if (myProjectInfo == null) return;
+  /**
+   * Re-exports only the targets owned by the changed BUILD files plus their direct reverse dependencies,
+   * and merges the result into the cached project info.
+   *
+   * @return false if the cached export could not be updated and the whole project has to be exported instead.
+   */
+  private boolean resolveIncrementally(
+    @NotNull PantsExportCache exportCache,
+    @NotNull PantsExportCache.CachedExport cachedExport,
+    @NotNull Consumer<String> statusConsumer,
+    @Nullable ProcessAdapter processAdapter
+  ) throws IOException {
+    if (myExecutor.getOptions().isImportSourceDepsAsJars()) {
+      // export-dep-as-jar packs the source dependencies of the exported targets into jars,
+      // so an export of a few targets can't be merged into an export of all of them.
+      return false;
+    }
+    final Set<String> changedDirs = cachedExport.getChangedBuildFileDirs();
+    final ProjectInfo projectInfo;
+    try (PantsMetrics.StageSpan ignored = PantsMetrics.startStage(myExecutor.getProjectPath(), PantsMetrics.STAGE_PARSE)) {
+      projectInfo = parseProjectInfoFromJSON(cachedExport.getExportFile());
+    }
+    catch (JsonSyntaxException e) {
+      LOG.warn("Can't parse cached output " + cachedExport.getExportFile().getPath(), e);
+      return false;
+    }
+
+    final Set<String> changedTargets = new HashSet<>();
+    final Map<String, List<String>> changedTargetsByDir = new HashMap<>();
+    for (String targetName : projectInfo.getTargets().keySet()) {
+      final Optional<String> dir = PantsTargetAddress.extractPath(targetName).filter(changedDirs::contains);
+      if (dir.isPresent()) {
+        changedTargets.add(targetName);
+        changedTargetsByDir.computeIfAbsent(dir.get(), key -> new ArrayList<>()).add(targetName);
+      }
+    }
+    final Set<String> staleTargets = new HashSet<>(changedTargets);
+    final Set<String> targetSpecs = new TreeSet<>();
+    for (String dir : changedDirs) {
+      // Directories without BUILD files any more only have their targets removed.
+      final File[] buildFiles = new File(myExecutor.getBuildRoot(), dir).listFiles(file -> PantsUtil.isBUILDFileName(file.getName()));
+      if (buildFiles == null || buildFiles.length == 0) {
+        continue;
+      }
+      if (isCoveredByTargetSpecs(dir)) {
+        targetSpecs.add(dir.isEmpty() ? "//:" : dir + ":");
+      }
+      else {
+        // The selected specs only pulled in some targets of this directory as dependencies, so the other ones
+        // must stay out of the project. Synthetic targets are exported again along with their owners.
+        for (String targetName : changedTargetsByDir.getOrDefault(dir, Collections.emptyList())) {
+          final TargetInfo targetInfo = projectInfo.getTarget(targetName);
+          if (targetInfo != null && !isSynthetic(targetInfo)) {
+            targetSpecs.add(targetName);
+          }
+        }
+      }
+    }
+    for (String changedTarget : changedTargets) {
+      for (String dependent : projectInfo.getDependents(changedTarget)) {
+        final TargetInfo dependentInfo = projectInfo.getTarget(dependent);
+        if (!changedTargets.contains(dependent) && dependentInfo != null && !isSynthetic(dependentInfo)) {
+          staleTargets.add(dependent);
+          targetSpecs.add(dependent);
+        }
+      }
+    }
+    LOG.info(String.format("Re-exporting %d target specs for %d changed BUILD file directories", targetSpecs.size(), changedDirs.size()));
+
+    if (!targetSpecs.isEmpty()) {
+      final ProjectInfo partialExport;
+      try {
+        final File output = myExecutor.loadProjectStructure(new ArrayList<>(targetSpecs), statusConsumer, processAdapter);
+        try (PantsMetrics.StageSpan ignored = PantsMetrics.startStage(myExecutor.getProjectPath(), PantsMetrics.STAGE_PARSE)) {
+          partialExport = parseProjectInfoFromJSON(output);
+        }
+        finally {
+          FileUtil.delete(output);
+        }
+      }
+      catch (ExecutionException | ExternalSystemException | JsonSyntaxException e) {
+        LOG.warn("Failed to export changed targets, falling back to exporting the whole project", e);
+        return false;
+      }
+      projectInfo.update(partialExport, staleTargets);
+    }
+    else {
+      projectInfo.removeTargets(staleTargets);
+    }
+    // Dependencies that were dropped from the changed targets aren't part of a full export any more.
+    projectInfo.removeUnreachableTargets();
+    exportCache.store(projectInfo, cachedExport.getFingerprints());
+    myProjectInfo = projectInfo;
+    return true;
+  }
 
+  /**
+   * @return true iff a full export lists all the targets of the directory, i.e. a selected target spec
+   * is a glob over the directory itself or one of its ancestors.
+   */
+  private boolean isCoveredByTargetSpecs(@NotNull String dir) {
+    final String relativeDir = StringUtil.trimStart(dir, "//");
+    for (String spec : myExecutor.getTargetSpecs()) {
+      final String relativeSpec = StringUtil.trimStart(spec, "//");
+      if (relativeSpec.endsWith("::")) {
+        final String specDir = StringUtil.trimEnd(StringUtil.trimEnd(relativeSpec, "::"), "/");
+        if (specDir.isEmpty() || relativeDir.equals(specDir) || relativeDir.startsWith(specDir + "/")) {
+          return true;
+        }
+      }
+      else if (relativeSpec.endsWith(":") && relativeDir.equals(StringUtil.trimEnd(relativeSpec, ":"))) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static boolean isSynthetic(@NotNull TargetInfo targetInfo) {
+    return targetInfo.getAddressInfos().stream().anyMatch(TargetAddressInfo::isSynthetic);
+  }
+
+  /**
+   * Builds the module nodes from the parsed project info, after the modifiers have adjusted it.
+   * The whole project info stays alive until the last resolver extension is done, since each of them walks all the targets.
+   */
+  public void addInfoTo(@NotNull DataNode<ProjectData> projectInfoDataNode) {
+    final ProjectInfo projectInfo = myProjectInfo;
+    if (projectInfo == null) return;
 
-    LOG.debug("Amount of targets before modifiers: " + myProjectInfo.getTargets().size());
+    LOG.debug("Amount of targets before modifiers: " + projectInfo.getTargets().size());
     for (PantsProjectInfoModifierExtension modifier : PantsProjectInfoModifierExtension.EP_NAME.getExtensions()) {
-      modifier.modify(myProjectInfo, myExecutor, LOG);
+      try (PantsMetrics.StageSpan ignored = PantsMetrics.startStage(myExecutor.getProjectPath(), PantsMetrics.modifierStage(modifier))) {
+        modifier.modify(projectInfo, myExecutor, LOG);
+      }
     }
-    LOG.debug("Amount of targets after modifiers: " + myProjectInfo.getTargets().size());
+    LOG.debug("Amount of targets after modifiers: " + projectInfo.getTargets().size());
 
-    PropertiesComponent.getInstance().setValues(PantsConstants.PANTS_AVAILABLE_TARGETS_KEY, myProjectInfo.getAvailableTargetTypes());
+    PropertiesComponent.getInstance().setValues(PantsConstants.PANTS_AVAILABLE_TARGETS_KEY, projectInfo.getAvailableTargetTypes());
     final Map<String, DataNode<ModuleData>> modules = new HashMap<>();
     for (PantsResolverExtension resolver : PantsResolverExtension.EP_NAME.getExtensions()) {
-      resolver.resolve(myProjectInfo, myExecutor, projectInfoDataNode, modules);
+      try (PantsMetrics.StageSpan ignored = PantsMetrics.startStage(myExecutor.getProjectPath(), PantsMetrics.resolverStage(resolver))) {
+        resolver.resolve(projectInfo, myExecutor, projectInfoDataNode, modules);
+      }
     }
     if (LOG.isDebugEnabled()) {
       final int amountOfModules = PantsUtil.findChildren(projectInfoDataNode, ProjectKeys.MODULE).size();
@@ -43,6 +43,7 @@ import com.intellij.openapi.wm.ToolWindowId;
 import com.intellij.openapi.wm.ToolWindowManager;
 import com.intellij.util.messages.MessageBusConnection;
 import com.twitter.intellij.pants.metrics.PantsExternalMetricsListenerManager;
+import com.twitter.intellij.pants.metrics.PantsMetrics;
 import com.twitter.intellij.pants.projectview.PantsProjectPaneSelectInTarget;
 import com.twitter.intellij.pants.projectview.ProjectFilesViewPane;
 import com.twitter.intellij.pants.service.PantsCompileOptionsExecutor;
@@ -74,22 +75,8 @@ public class PantsSystemProjectResolver implements ExternalSystemProjectResolver
 
   private static void clearPantsModules(@NotNull Project project, String projectPath, DataNode<ProjectData> projectDataNode) {
     Runnable clearModules = () -> {
-      Set<String> importedModules = projectDataNode.getChildren().stream()
-        .map(node -> node.getData(ProjectKeys.MODULE))
-        .filter(Objects::nonNull)
-        .map(ModuleData::getInternalName)
-        .collect(Collectors.toSet());
-
-      Module[] modules = ModuleManager.getInstance(project).getModules();
-      for (Module module : modules) {
-        String rootProjectPath = ExternalSystemModulePropertyManager.getInstance(module).getRootProjectPath();
-        if (rootProjectPath == null) continue;
-
-        boolean hasPantsProjectPath = rootProjectPath.equals(Paths.get(projectPath).normalize().toString());
-        boolean isNotBeingImported = !importedModules.contains(module.getName());
-        if (hasPantsProjectPath && isNotBeingImported) {
-          ModuleManager.getInstance(project).disposeModule(module);
-        }
+      try (PantsMetrics.StageSpan ignored = PantsMetrics.startStage(projectPath, PantsMetrics.STAGE_CLEAR_MODULES)) {
+        disposeModulesNotBeingImported(project, projectPath, projectDataNode);
       }
     };
 
@@ -97,6 +84,30 @@ public class PantsSystemProjectResolver implements ExternalSystemProjectResolver
     application.invokeAndWait(() -> application.runWriteAction(clearModules));
   }
 
+  private static void disposeModulesNotBeingImported(
+    @NotNull Project project,
+    @NotNull String projectPath,
+    @NotNull DataNode<ProjectData> projectDataNode
+  ) {
+    Set<String> importedModules = projectDataNode.getChildren().stream()
+      .map(node -> node.getData(ProjectKeys.MODULE))
+      .filter(Objects::nonNull)
+      .map(ModuleData::getInternalName)
+      .collect(Collectors.toSet());
+
+    Module[] modules = ModuleManager.getInstance(project).getModules();
+    for (Module module : modules) {
+      String rootProjectPath = ExternalSystemModulePropertyManager.getInstance(module).getRootProjectPath();
+      if (rootProjectPath == null) continue;
+
+      boolean hasPantsProjectPath = rootProjectPath.equals(Paths.get(projectPath).normalize().toString());
+      boolean isNotBeingImported = !importedModules.contains(module.getName());
+      if (hasPantsProjectPath && isNotBeingImported) {
+        ModuleManager.getInstance(project).disposeModule(module);
+      }
+    }
+  }
+
   @Nullable
   @Override
   public DataNode<ProjectData> resolveProjectInfo(
@@ -113,6 +124,7 @@ public class PantsSystemProjectResolver implements ExternalSystemProjectResolver
     checkForDifferentPantsExecutables(id, projectPath);
     final PantsCompileOptionsExecutor executor = PantsCompileOptionsExecutor.create(projectPath, settings);
     task2executor.put(id, executor);
+    PantsMetrics.markImportStart(executor.getProjectPath());
 
     final DataNode<ProjectData> projectDataNode =
       resolveProjectInfoImpl(id, executor, listener, settings, isPreviewMode);
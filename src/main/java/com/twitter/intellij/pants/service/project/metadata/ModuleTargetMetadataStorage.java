@@ -19,13 +19,11 @@ public class ModuleTargetMetadataStorage implements PersistentStateComponent<Mod
     public static class State {
         public Set<String> libraryExcludes = Collections.emptySet();
         public Set<String> targetAddresses = Collections.emptySet();
-        //public Set<String> targetAddressesInfoSet = Collections.emptySet();
 
         public State() {}
         public State(TargetMetadata metadata) {
             this.libraryExcludes = metadata.getLibraryExcludes();
             this.targetAddresses = metadata.getTargetAddresses();
-            //this.targetAddressesInfoSet = metadata.getTargetAddressInfoSet();
         }
     }
 
@@ -7,7 +7,6 @@ import com.intellij.openapi.externalSystem.model.Key;
 import com.intellij.openapi.externalSystem.model.ProjectKeys;
 import com.intellij.openapi.externalSystem.model.project.ModuleData;
 import com.intellij.serialization.PropertyMapping;
-import com.twitter.intellij.pants.model.TargetAddressInfo;
 import com.twitter.intellij.pants.util.PantsConstants;
 import org.jetbrains.annotations.NotNull;
 
@@ -24,7 +23,6 @@ public class TargetMetadata extends ModuleData {
 
   private Set<String> myLibraryExcludes = Collections.emptySet();
   private Set<String> myTargetAddresses = Collections.emptySet();
-  private Set<TargetAddressInfo> myTargetAddressInfoSet = Collections.emptySet();
 
   @PropertyMapping({"id", "moduleTypeId", "externalName", "moduleFileDirectoryPath", "externalConfigPath"})
   public TargetMetadata(
@@ -49,14 +47,6 @@ public class TargetMetadata extends ModuleData {
     myTargetAddresses = new HashSet<>(targetAddresses);
   }
 
-  public Set<TargetAddressInfo> getTargetAddressInfoSet() {
-    return myTargetAddressInfoSet;
-  }
-
-  public void setTargetAddressInfoSet(Set<TargetAddressInfo> targetAddressInfoSet) {
-    myTargetAddressInfoSet = new HashSet<>(targetAddressInfoSet);
-  }
-
   @NotNull
   public Set<String> getLibraryExcludes() {
     return myLibraryExcludes;
@@ -3,7 +3,7 @@
 
 package com.twitter.intellij.pants.service.project.model;
 
-import com.google.gson.GsonBuilder;
+import com.google.gson.JsonSyntaxException;
 import com.google.gson.annotations.SerializedName;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.util.text.StringUtil;
@@ -13,24 +13,34 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.jetbrains.annotations.TestOnly;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 public class ProjectInfo {
-  public static ProjectInfo fromJson(@NotNull String data) {
-    final GsonBuilder builder = new GsonBuilder();
-    builder.registerTypeAdapter(TargetInfo.class, TargetInfoDeserializer.INSTANCE);
-    builder.registerTypeAdapter(LibraryInfo.class, LibraryInfoDeserializer.INSTANCE);
-    final ProjectInfo projectInfo = builder.create().fromJson(data, ProjectInfo.class);
-    projectInfo.initTargetAddresses();
+  public static ProjectInfo fromJson(@NotNull String data) throws JsonSyntaxException {
+    try {
+      return ProjectInfoReader.read(new StringReader(data));
+    }
+    catch (IOException e) {
+      throw new JsonSyntaxException(e);
+    }
+  }
 
-    return projectInfo;
+  public static ProjectInfo fromJson(@NotNull File file) throws IOException, JsonSyntaxException {
+    return ProjectInfoReader.read(file);
   }
 
   @TestOnly
@@ -40,8 +50,19 @@ public class ProjectInfo {
   private final Logger LOG = Logger.getInstance(getClass());
   // id(org:name:version) to jars
   protected Map<String, LibraryInfo> libraries;
+  // id prefix(org:name) to ids with that prefix, built on first use.
+  // Volatile because resolver extensions may look up libraries from several threads.
+  @Nullable
+  private transient volatile Map<String, List<String>> librariesByName = null;
   // name to info
   protected Map<String, TargetInfo> targets;
+  // targets sorted by name, computed on first use and dropped whenever a target is added or removed
+  @Nullable
+  private transient List<Map.Entry<String, TargetInfo>> sortedTargets = null;
+  // name to names of the targets that depend on it, built on first use.
+  // Dependencies have to be changed through ProjectInfo to keep it in sync.
+  @Nullable
+  private transient Map<String, Set<String>> dependents = null;
 
   /* This might need to be expanded to show all properties that
    * a target type can contain like:
@@ -83,10 +104,20 @@ public class ProjectInfo {
 
   public void setLibraries(Map<String, LibraryInfo> libraries) {
     this.libraries = libraries;
+    librariesByName = null;
   }
 
+  /**
+   * The targets are sorted once and the result is shared by all resolver extensions until the targets change.
+   */
   public List<Map.Entry<String, TargetInfo>> getSortedTargets() {
-    return getSortedEntries(getTargets());
+    if (sortedTargets == null) {
+      @SuppressWarnings("unchecked")
+      final Map.Entry<String, TargetInfo>[] entries = targets.entrySet().toArray(new Map.Entry[0]);
+      Arrays.sort(entries, (o1, o2) -> StringUtil.naturalCompare(o1.getKey(), o2.getKey()));
+      sortedTargets = Collections.unmodifiableList(Arrays.asList(entries));
+    }
+    return sortedTargets;
   }
 
   public Map<String, TargetInfo> getTargets() {
@@ -95,6 +126,8 @@ public class ProjectInfo {
 
   public void setTargets(Map<String, TargetInfo> targets) {
     this.targets = targets;
+    sortedTargets = null;
+    dependents = null;
   }
 
   @NotNull
@@ -117,12 +150,8 @@ public class ProjectInfo {
       return null;
     }
     final String libraryName = libraryId.substring(0, versionIndex);
-    for (Map.Entry<String, LibraryInfo> libIdAndJars : libraries.entrySet()) {
-      final String currentLibraryId = libIdAndJars.getKey();
-      if (!StringUtil.startsWith(currentLibraryId, libraryName + ":")) {
-        continue;
-      }
-      final LibraryInfo currentInfo = libIdAndJars.getValue();
+    for (String currentLibraryId : getLibrariesByName().getOrDefault(libraryName, Collections.emptyList())) {
+      final LibraryInfo currentInfo = libraries.get(currentLibraryId);
       if (currentInfo != null) {
         LOG.info("Using " + currentLibraryId + " instead of " + libraryId);
         return currentInfo;
@@ -131,13 +160,59 @@ public class ProjectInfo {
     return null;
   }
 
+  /**
+   * Maps every prefix of a library id that ends right before a ':' to the ids starting with it,
+   * so `org:name` finds all versions of that library.
+   */
+  @NotNull
+  private Map<String, List<String>> getLibrariesByName() {
+    Map<String, List<String>> result = librariesByName;
+    if (result == null) {
+      result = new HashMap<>();
+      for (String id : libraries.keySet()) {
+        for (int index = id.indexOf(':'); index != -1; index = id.indexOf(':', index + 1)) {
+          result.computeIfAbsent(id.substring(0, index), name -> new ArrayList<>()).add(id);
+        }
+      }
+      librariesByName = result;
+    }
+    return result;
+  }
+
   @Nullable
   public TargetInfo getTarget(String targetName) {
     return targets.get(targetName);
   }
 
+  /**
+   * @return names of the targets that depend on the given one.
+   */
+  @NotNull
+  public Set<String> getDependents(@NotNull String targetName) {
+    final Set<String> result = getDependents().get(targetName);
+    return result != null ? Collections.unmodifiableSet(result) : Collections.emptySet();
+  }
+
   public void addTarget(String targetName, TargetInfo info) {
-    targets.put(targetName, info);
+    final TargetInfo previousInfo = targets.put(targetName, info);
+    sortedTargets = null;
+    if (dependents != null) {
+      if (previousInfo != null) {
+        unindexDependencies(targetName, previousInfo);
+      }
+      indexDependencies(targetName, info);
+    }
+  }
+
+  public void addDependency(@NotNull String targetName, @NotNull String dependencyName) {
+    final TargetInfo targetInfo = targets.get(targetName);
+    if (targetInfo == null) {
+      return;
+    }
+    targetInfo.addDependency(dependencyName);
+    if (dependents != null) {
+      dependents.computeIfAbsent(dependencyName, name -> new HashSet<>()).add(targetName);
+    }
   }
 
   public void removeTargets(Collection<String> targetNames) {
@@ -153,19 +228,180 @@ public class ProjectInfo {
   }
 
   public void removeTarget(String targetName) {
-    targets.remove(targetName);
-    for (TargetInfo targetInfo : targets.values()) {
-      targetInfo.getTargets().remove(targetName);
+    final Map<String, Set<String>> allDependents = getDependents();
+    final TargetInfo removedInfo = targets.remove(targetName);
+    sortedTargets = null;
+    if (removedInfo != null) {
+      unindexDependencies(targetName, removedInfo);
+    }
+    final Set<String> targetDependents = allDependents.remove(targetName);
+    if (targetDependents == null) {
+      return;
+    }
+    for (String dependentName : targetDependents) {
+      final TargetInfo dependentInfo = targets.get(dependentName);
+      if (dependentInfo != null) {
+        dependentInfo.removeDependency(targetName);
+      }
     }
   }
 
   public void replaceDependency(String targetName, String newTargetName) {
-    for (TargetInfo targetInfo : targets.values()) {
-      targetInfo.replaceDependency(targetName, newTargetName);
+    final Set<String> targetDependents = getDependents().remove(targetName);
+    if (targetDependents == null) {
+      return;
+    }
+    for (String dependentName : targetDependents) {
+      final TargetInfo dependentInfo = targets.get(dependentName);
+      if (dependentInfo != null && dependentInfo.removeDependency(targetName)) {
+        addDependency(dependentName, newTargetName);
+      }
+    }
+  }
+
+  @NotNull
+  private Map<String, Set<String>> getDependents() {
+    if (dependents == null) {
+      dependents = new HashMap<>();
+      for (Map.Entry<String, TargetInfo> entry : targets.entrySet()) {
+        indexDependencies(entry.getKey(), entry.getValue());
+      }
+    }
+    return dependents;
+  }
+
+  private void indexDependencies(@NotNull String targetName, @NotNull TargetInfo info) {
+    for (String dependencyName : info.getTargets()) {
+      dependents.computeIfAbsent(dependencyName, name -> new HashSet<>()).add(targetName);
+    }
+  }
+
+  private void unindexDependencies(@NotNull String targetName, @NotNull TargetInfo info) {
+    for (String dependencyName : info.getTargets()) {
+      final Set<String> dependencyDependents = dependents.get(dependencyName);
+      if (dependencyDependents != null) {
+        dependencyDependents.remove(targetName);
+      }
+    }
+  }
+
+  /**
+   * Merges a partial export into this project info.
+   *
+   * @param export       result of exporting a subset of the targets.
+   * @param staleTargets targets that were re-exported. The ones that are missing from the export were deleted.
+   *                     Targets that were already known stay target roots only if they were roots before,
+   *                     since exporting a target by its address makes it a root.
+   */
+  public void update(@NotNull ProjectInfo export, @NotNull Collection<String> staleTargets) {
+    for (String targetName : staleTargets) {
+      if (!export.targets.containsKey(targetName)) {
+        removeTarget(targetName);
+      }
+    }
+    for (Map.Entry<String, TargetInfo> entry : export.targets.entrySet()) {
+      final TargetInfo existingInfo = targets.get(entry.getKey());
+      if (existingInfo != null) {
+        final boolean isTargetRoot = existingInfo.getAddressInfos().stream().anyMatch(TargetAddressInfo::isTargetRoot);
+        entry.getValue().getAddressInfos().forEach(addressInfo -> addressInfo.setIsTargetRoot(isTargetRoot));
+      }
+      addTarget(entry.getKey(), entry.getValue());
+    }
+    libraries.putAll(export.libraries);
+    librariesByName = null;
+    availableTargetTypes = export.availableTargetTypes;
+    version = export.version;
+    if (export.python_setup != null) {
+      python_setup = export.python_setup;
+    }
+  }
+
+  /**
+   * Removes the targets that are neither target roots nor dependencies of one, which a full export wouldn't contain.
+   * Does nothing if no target is marked as a root, e.g. for exports of old pants versions.
+   */
+  public void removeUnreachableTargets() {
+    final Deque<String> queue = new ArrayDeque<>();
+    for (Map.Entry<String, TargetInfo> entry : targets.entrySet()) {
+      if (entry.getValue().getAddressInfos().stream().anyMatch(TargetAddressInfo::isTargetRoot)) {
+        queue.add(entry.getKey());
+      }
+    }
+    if (queue.isEmpty()) {
+      return;
+    }
+    final Set<String> reachable = new HashSet<>(queue);
+    while (!queue.isEmpty()) {
+      final TargetInfo targetInfo = targets.get(queue.poll());
+      if (targetInfo == null) {
+        continue;
+      }
+      for (String dependency : targetInfo.getTargets()) {
+        if (reachable.add(dependency)) {
+          queue.add(dependency);
+        }
+      }
+    }
+    final List<String> unreachable = new ArrayList<>();
+    for (String targetName : targets.keySet()) {
+      if (!reachable.contains(targetName)) {
+        unreachable.add(targetName);
+      }
+    }
+    removeTargets(unreachable);
+  }
+
+  /**
+   * Adds an export of other target specs of the same repo, e.g. one of several exports run in parallel.
+   * Targets present in both get the union of their dependencies, libraries and roots, and stay target roots
+   * if they are roots in either.
+   */
+  public void merge(@NotNull ProjectInfo other) {
+    for (Map.Entry<String, TargetInfo> entry : other.targets.entrySet()) {
+      final TargetInfo existingInfo = targets.get(entry.getKey());
+      if (existingInfo == null) {
+        addTarget(entry.getKey(), entry.getValue());
+      }
+      else {
+        final TargetInfo mergedInfo = existingInfo.union(entry.getValue());
+        mergedInfo.setAddressInfos(mergeAddressInfos(existingInfo.getAddressInfos(), entry.getValue().getAddressInfos()));
+        addTarget(entry.getKey(), mergedInfo);
+      }
+    }
+    for (Map.Entry<String, LibraryInfo> entry : other.libraries.entrySet()) {
+      libraries.putIfAbsent(entry.getKey(), entry.getValue());
+    }
+    librariesByName = null;
+    if (availableTargetTypes.length == 0) {
+      availableTargetTypes = other.availableTargetTypes;
+    }
+    if (python_setup == null) {
+      python_setup = other.python_setup;
+    }
+  }
+
+  /**
+   * Keeps one address info per address, which is a target root if any of the merged ones is.
+   */
+  @NotNull
+  private static Set<TargetAddressInfo> mergeAddressInfos(
+    @NotNull Set<TargetAddressInfo> addressInfos,
+    @NotNull Set<TargetAddressInfo> otherAddressInfos
+  ) {
+    final Map<String, TargetAddressInfo> byAddress = new HashMap<>();
+    for (TargetAddressInfo addressInfo : addressInfos) {
+      byAddress.put(addressInfo.getTargetAddress(), addressInfo);
+    }
+    for (TargetAddressInfo otherAddressInfo : otherAddressInfos) {
+      final TargetAddressInfo addressInfo = byAddress.putIfAbsent(otherAddressInfo.getTargetAddress(), otherAddressInfo);
+      if (addressInfo != null && otherAddressInfo.isTargetRoot()) {
+        addressInfo.setIsTargetRoot(true);
+      }
     }
+    return new HashSet<>(byAddress.values());
   }
 
-  private void initTargetAddresses() {
+  void initTargetAddresses() {
     for (Map.Entry<String, TargetInfo> entry : targets.entrySet()) {
       final TargetInfo info = entry.getValue();
       final String address = entry.getKey();
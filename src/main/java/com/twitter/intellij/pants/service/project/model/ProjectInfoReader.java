@@ -0,0 +1,281 @@
+// Copyright 2023 Pants project contributors (see CONTRIBUTORS.md).
+// Licensed under the Apache License, Version 2.0 (see LICENSE).
+
+package com.twitter.intellij.pants.service.project.model;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.MalformedJsonException;
+import com.twitter.intellij.pants.model.Globs;
+import com.twitter.intellij.pants.model.TargetAddressInfo;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PushbackReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Reads the output of `pants export` straight into {@link ProjectInfo} with a streaming {@link JsonReader},
+ * so no intermediate JSON tree or in-memory copy of the whole export is ever built.
+ * <p>
+ * Target addresses, library ids, paths and types repeat many times in an export,
+ * so each distinct value is kept as a single String instance shared by the whole project info.
+ */
+public class ProjectInfoReader {
+  private static final Gson GSON = new Gson();
+
+  private final JsonReader myReader;
+  private final Map<String, String> myStrings = new HashMap<>();
+
+  private ProjectInfoReader(@NotNull Reader reader) {
+    myReader = new JsonReader(reader);
+    // Same as Gson.fromJson, which the export used to be parsed with.
+    myReader.setLenient(true);
+  }
+
+  @NotNull
+  public static ProjectInfo read(@NotNull File file) throws IOException, JsonSyntaxException {
+    try (Reader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+      return read(reader);
+    }
+  }
+
+  /**
+   * Pants may print some logs before the actual json, so everything before the first line starting with '{' is skipped.
+   */
+  @NotNull
+  public static ProjectInfo read(@NotNull Reader reader) throws IOException, JsonSyntaxException {
+    final PushbackReader pushbackReader = new PushbackReader(reader);
+    skipToJsonStart(pushbackReader);
+    try {
+      final ProjectInfo projectInfo = new ProjectInfoReader(pushbackReader).readProjectInfo();
+      projectInfo.initTargetAddresses();
+      return projectInfo;
+    }
+    catch (MalformedJsonException | IllegalStateException | NumberFormatException e) {
+      throw new JsonSyntaxException(e);
+    }
+  }
+
+  private static void skipToJsonStart(@NotNull PushbackReader reader) throws IOException {
+    int previous = '\n';
+    int current;
+    while ((current = reader.read()) != -1) {
+      if (current == '{' && previous == '\n') {
+        reader.unread(current);
+        return;
+      }
+      previous = current;
+    }
+  }
+
+  @NotNull
+  private ProjectInfo readProjectInfo() throws IOException {
+    final ProjectInfo projectInfo = new ProjectInfo();
+    projectInfo.libraries = new HashMap<>();
+    projectInfo.targets = new HashMap<>();
+    myReader.beginObject();
+    while (myReader.hasNext()) {
+      switch (myReader.nextName()) {
+        case "libraries":
+          readLibraries(projectInfo.libraries);
+          break;
+        case "targets":
+          readTargets(projectInfo.targets);
+          break;
+        case "available_target_types":
+          projectInfo.availableTargetTypes = readStringList().toArray(new String[0]);
+          break;
+        case "version":
+          projectInfo.version = nextStringOrNull();
+          break;
+        case "python_setup":
+          projectInfo.python_setup = GSON.getAdapter(PythonSetup.class).read(myReader);
+          break;
+        default:
+          myReader.skipValue();
+      }
+    }
+    myReader.endObject();
+    return projectInfo;
+  }
+
+  private void readLibraries(@NotNull Map<String, LibraryInfo> libraries) throws IOException {
+    myReader.beginObject();
+    while (myReader.hasNext()) {
+      final String libraryId = intern(myReader.nextName());
+      final LibraryInfo libraryInfo = new LibraryInfo();
+      myReader.beginObject();
+      while (myReader.hasNext()) {
+        final String classifier = intern(myReader.nextName());
+        libraryInfo.addJar(classifier, nextStringOrNull());
+      }
+      myReader.endObject();
+      libraries.put(libraryId, libraryInfo);
+    }
+    myReader.endObject();
+  }
+
+  private void readTargets(@NotNull Map<String, TargetInfo> targets) throws IOException {
+    myReader.beginObject();
+    while (myReader.hasNext()) {
+      final String targetName = intern(myReader.nextName());
+      targets.put(targetName, readTarget());
+    }
+    myReader.endObject();
+  }
+
+  @NotNull
+  private TargetInfo readTarget() throws IOException {
+    final TargetAddressInfo addressInfo = new TargetAddressInfo();
+    final TargetInfo targetInfo = new TargetInfo(addressInfo);
+    myReader.beginObject();
+    while (myReader.hasNext()) {
+      switch (myReader.nextName()) {
+        case "targets":
+          targetInfo.targets = readStringSet();
+          break;
+        case "libraries":
+          targetInfo.libraries = readStringSet();
+          break;
+        case "excludes":
+          targetInfo.excludes = readStringSet();
+          break;
+        case "roots":
+          targetInfo.roots = readContentRoots();
+          break;
+        case "target_type":
+          addressInfo.setTargetType(nextInternedStringOrNull());
+          break;
+        case "pants_target_type":
+          addressInfo.setPantsTargetType(nextInternedStringOrNull());
+          break;
+        case "globs":
+          addressInfo.setGlobs(GSON.getAdapter(Globs.class).read(myReader));
+          break;
+        case "is_synthetic":
+          addressInfo.setIsSynthetic(nextBooleanOrFalse());
+          break;
+        case "is_target_root":
+          addressInfo.setIsTargetRoot(nextBooleanOrFalse());
+          break;
+        case "id":
+          addressInfo.setId(nextStringOrNull());
+          break;
+        default:
+          myReader.skipValue();
+      }
+    }
+    myReader.endObject();
+    return targetInfo;
+  }
+
+  @NotNull
+  private Set<ContentRoot> readContentRoots() throws IOException {
+    final Set<ContentRoot> roots = new TreeSet<>();
+    if (skipNull()) {
+      return roots;
+    }
+    myReader.beginArray();
+    while (myReader.hasNext()) {
+      String sourceRoot = null;
+      String packagePrefix = null;
+      myReader.beginObject();
+      while (myReader.hasNext()) {
+        switch (myReader.nextName()) {
+          case "source_root":
+            sourceRoot = nextInternedStringOrNull();
+            break;
+          case "package_prefix":
+            packagePrefix = nextInternedStringOrNull();
+            break;
+          default:
+            myReader.skipValue();
+        }
+      }
+      myReader.endObject();
+      if (sourceRoot != null) {
+        roots.add(new ContentRoot(sourceRoot, packagePrefix != null ? packagePrefix : ""));
+      }
+    }
+    myReader.endArray();
+    return roots;
+  }
+
+  @NotNull
+  private Set<String> readStringSet() throws IOException {
+    final Set<String> result = new TreeSet<>();
+    if (skipNull()) {
+      return result;
+    }
+    myReader.beginArray();
+    while (myReader.hasNext()) {
+      final String value = nextInternedStringOrNull();
+      if (value != null) {
+        result.add(value);
+      }
+    }
+    myReader.endArray();
+    return result;
+  }
+
+  @NotNull
+  private List<String> readStringList() throws IOException {
+    if (skipNull()) {
+      return Collections.emptyList();
+    }
+    final List<String> result = new ArrayList<>();
+    myReader.beginArray();
+    while (myReader.hasNext()) {
+      final String value = nextStringOrNull();
+      if (value != null) {
+        result.add(value);
+      }
+    }
+    myReader.endArray();
+    return result;
+  }
+
+  @Nullable
+  private String nextStringOrNull() throws IOException {
+    return skipNull() ? null : myReader.nextString();
+  }
+
+  @Nullable
+  private String nextInternedStringOrNull() throws IOException {
+    return skipNull() ? null : intern(myReader.nextString());
+  }
+
+  @NotNull
+  private String intern(@NotNull String value) {
+    final String existing = myStrings.putIfAbsent(value, value);
+    return existing != null ? existing : value;
+  }
+
+  private boolean nextBooleanOrFalse() throws IOException {
+    return !skipNull() && myReader.nextBoolean();
+  }
+
+  private boolean skipNull() throws IOException {
+    if (myReader.peek() == JsonToken.NULL) {
+      myReader.nextNull();
+      return true;
+    }
+    return false;
+  }
+}
@@ -0,0 +1,109 @@
+// Copyright 2023 Pants project contributors (see CONTRIBUTORS.md).
+// Licensed under the Apache License, Version 2.0 (see LICENSE).
+
+package com.twitter.intellij.pants.service.project.model;
+
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonWriter;
+import com.twitter.intellij.pants.model.Globs;
+import com.twitter.intellij.pants.model.TargetAddressInfo;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * Writes {@link ProjectInfo} back in the `pants export` format understood by {@link ProjectInfoReader},
+ * e.g. to persist a project info that was merged from several exports.
+ */
+public class ProjectInfoWriter {
+  private static final Gson GSON = new Gson();
+
+  private final JsonWriter myWriter;
+
+  private ProjectInfoWriter(@NotNull Writer writer) {
+    myWriter = new JsonWriter(writer);
+  }
+
+  public static void write(@NotNull ProjectInfo projectInfo, @NotNull File file) throws IOException {
+    try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8))) {
+      write(projectInfo, writer);
+    }
+  }
+
+  public static void write(@NotNull ProjectInfo projectInfo, @NotNull Writer writer) throws IOException {
+    new ProjectInfoWriter(writer).writeProjectInfo(projectInfo);
+    writer.flush();
+  }
+
+  private void writeProjectInfo(@NotNull ProjectInfo projectInfo) throws IOException {
+    myWriter.beginObject();
+    myWriter.name("version").value(projectInfo.version);
+    myWriter.name("available_target_types");
+    writeStrings(projectInfo.getAvailableTargetTypes());
+    if (projectInfo.getPythonSetup() != null) {
+      myWriter.name("python_setup");
+      GSON.getAdapter(PythonSetup.class).write(myWriter, projectInfo.getPythonSetup());
+    }
+    myWriter.name("libraries").beginObject();
+    for (Map.Entry<String, LibraryInfo> entry : projectInfo.getLibraries().entrySet()) {
+      myWriter.name(entry.getKey()).beginObject();
+      for (Map.Entry<String, String> jar : entry.getValue().getContents().entrySet()) {
+        myWriter.name(jar.getKey()).value(jar.getValue());
+      }
+      myWriter.endObject();
+    }
+    myWriter.endObject();
+    myWriter.name("targets").beginObject();
+    for (Map.Entry<String, TargetInfo> entry : projectInfo.getTargets().entrySet()) {
+      myWriter.name(entry.getKey());
+      writeTarget(entry.getValue());
+    }
+    myWriter.endObject();
+    myWriter.endObject();
+  }
+
+  private void writeTarget(@NotNull TargetInfo targetInfo) throws IOException {
+    myWriter.beginObject();
+    myWriter.name("targets");
+    writeStrings(targetInfo.getTargets().toArray(new String[0]));
+    myWriter.name("libraries");
+    writeStrings(targetInfo.getLibraries().toArray(new String[0]));
+    myWriter.name("excludes");
+    writeStrings(targetInfo.getExcludes().toArray(new String[0]));
+    myWriter.name("roots").beginArray();
+    for (ContentRoot root : targetInfo.getRoots()) {
+      myWriter.beginObject();
+      myWriter.name("source_root").value(root.getRawSourceRoot());
+      myWriter.name("package_prefix").value(root.getPackagePrefix() != null ? root.getPackagePrefix() : "");
+      myWriter.endObject();
+    }
+    myWriter.endArray();
+    // A freshly exported target has exactly one address info.
+    for (TargetAddressInfo addressInfo : targetInfo.getAddressInfos()) {
+      myWriter.name("target_type").value(addressInfo.getTargetType());
+      myWriter.name("pants_target_type").value(addressInfo.getInternalPantsTargetType());
+      myWriter.name("globs");
+      GSON.getAdapter(Globs.class).write(myWriter, addressInfo.getGlobs());
+      myWriter.name("is_synthetic").value(addressInfo.isSynthetic());
+      myWriter.name("is_target_root").value(addressInfo.isTargetRoot());
+      myWriter.name("id").value(addressInfo.getId());
+      break;
+    }
+    myWriter.endObject();
+  }
+
+  private void writeStrings(@NotNull String[] values) throws IOException {
+    myWriter.beginArray();
+    for (String value : values) {
+      myWriter.value(value);
+    }
+    myWriter.endArray();
+  }
+}
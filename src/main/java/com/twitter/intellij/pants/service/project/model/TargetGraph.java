@@ -0,0 +1,111 @@
+// Copyright 2023 Pants project contributors (see CONTRIBUTORS.md).
+// Licensed under the Apache License, Version 2.0 (see LICENSE).
+
+package com.twitter.intellij.pants.service.project.model;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Snapshot of the dependency graph of a {@link ProjectInfo} with targets numbered 0..N-1 in name order
+ * and edges stored as int arrays, for modifiers that walk the graph many times.
+ * Dependencies on targets that are not in the project are left out.
+ * The snapshot is not updated when the project info changes.
+ */
+public class TargetGraph {
+  private final String[] myNames;
+  private final Map<String, Integer> myIds;
+  private final int[][] myDependencies;
+  private final int[][] myDependents;
+
+  private TargetGraph(@NotNull String[] names, @NotNull Map<String, Integer> ids, @NotNull int[][] dependencies) {
+    myNames = names;
+    myIds = ids;
+    myDependencies = dependencies;
+    myDependents = invert(dependencies);
+  }
+
+  @NotNull
+  public static TargetGraph of(@NotNull ProjectInfo projectInfo) {
+    final String[] names = projectInfo.getTargets().keySet().toArray(new String[0]);
+    Arrays.sort(names);
+    final Map<String, Integer> ids = new HashMap<>(names.length * 2);
+    for (int i = 0; i < names.length; i++) {
+      ids.put(names[i], i);
+    }
+    final int[][] dependencies = new int[names.length][];
+    for (int i = 0; i < names.length; i++) {
+      final Set<String> targetDependencies = projectInfo.getTarget(names[i]).getTargets();
+      final int[] edges = new int[targetDependencies.size()];
+      int edgeCount = 0;
+      for (String dependency : targetDependencies) {
+        final Integer id = ids.get(dependency);
+        if (id != null) {
+          edges[edgeCount++] = id;
+        }
+      }
+      dependencies[i] = edgeCount == edges.length ? edges : Arrays.copyOf(edges, edgeCount);
+    }
+    return new TargetGraph(names, ids, dependencies);
+  }
+
+  @NotNull
+  private static int[][] invert(@NotNull int[][] dependencies) {
+    final int[] counts = new int[dependencies.length];
+    for (int[] edges : dependencies) {
+      for (int dependency : edges) {
+        counts[dependency]++;
+      }
+    }
+    final int[][] result = new int[dependencies.length][];
+    for (int i = 0; i < dependencies.length; i++) {
+      result[i] = new int[counts[i]];
+    }
+    // Filling in increasing order of the dependent keeps every row sorted.
+    Arrays.fill(counts, 0);
+    for (int i = 0; i < dependencies.length; i++) {
+      for (int dependency : dependencies[i]) {
+        result[dependency][counts[dependency]++] = i;
+      }
+    }
+    return result;
+  }
+
+  public int size() {
+    return myNames.length;
+  }
+
+  @NotNull
+  public String getName(int id) {
+    return myNames[id];
+  }
+
+  /**
+   * @return the id of the target, or -1 if it is not in the graph.
+   */
+  public int getId(@Nullable String name) {
+    final Integer id = myIds.get(name);
+    return id != null ? id : -1;
+  }
+
+  /**
+   * @return ids of the targets the given one depends on. The array must not be modified.
+   */
+  @NotNull
+  public int[] getDependencies(int id) {
+    return myDependencies[id];
+  }
+
+  /**
+   * @return ids of the targets that depend on the given one, in increasing order. The array must not be modified.
+   */
+  @NotNull
+  public int[] getDependents(int id) {
+    return myDependents[id];
+  }
+}
@@ -13,6 +13,7 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Optional;
@@ -59,6 +60,14 @@ public class TargetInfo {
     setRoots(roots);
   }
 
+  private TargetInfo(@NotNull Accumulator accumulator) {
+    addressInfos = accumulator.myAddressInfos;
+    targets = accumulator.myTargets;
+    libraries = accumulator.myLibraries;
+    excludes = accumulator.myExcludes;
+    roots = accumulator.myRoots;
+  }
+
   public Set<TargetAddressInfo> getAddressInfos() {
     return addressInfos;
   }
@@ -85,9 +94,14 @@ public class TargetInfo {
     this.excludes = new TreeSet<>(excludes);
   }
 
+  /**
+   * Read-only, since {@link ProjectInfo} indexes the dependencies of its targets.
+   * Targets in a project info are changed through {@link ProjectInfo#addDependency}, {@link ProjectInfo#replaceDependency}
+   * and {@link ProjectInfo#removeTarget}.
+   */
   @NotNull
   public Set<String> getTargets() {
-    return targets;
+    return Collections.unmodifiableSet(targets);
   }
 
   public void setTargets(Set<String> targets) {
@@ -182,7 +196,11 @@ public class TargetInfo {
   }
 
   public boolean removeDependency(@NotNull String targetName) {
-    return getTargets().remove(targetName);
+    return targets.remove(targetName);
+  }
+
+  public void removeDependencies(@NotNull Collection<String> targetNames) {
+    targets.removeAll(targetNames);
   }
 
   public void replaceDependency(@NotNull String targetName, @NotNull String newTargetName) {
@@ -192,13 +210,48 @@ public class TargetInfo {
   }
 
   public TargetInfo union(@NotNull TargetInfo other) {
-    return new TargetInfo(
-      ContainerUtil.union(getAddressInfos(), other.getAddressInfos()),
-      ContainerUtil.union(getTargets(), other.getTargets()),
-      ContainerUtil.union(getLibraries(), other.getLibraries()),
-      ContainerUtil.union(getExcludes(), other.getExcludes()),
-      ContainerUtil.union(getRoots(), other.getRoots())
-    );
+    return new Accumulator().add(this).add(other).build();
+  }
+
+  /**
+   * Merges many targets into one without copying the sets after every step, as folding with {@link #union} would.
+   */
+  public static class Accumulator {
+    private final Set<TargetAddressInfo> myAddressInfos = new HashSet<>();
+    private final Set<String> myTargets = new TreeSet<>();
+    private final Set<String> myLibraries = new TreeSet<>();
+    private final Set<String> myExcludes = new TreeSet<>();
+    private final Set<ContentRoot> myRoots = new TreeSet<>();
+    private boolean myBuilt = false;
+
+    @NotNull
+    public Accumulator add(@NotNull TargetInfo info) {
+      if (myBuilt) {
+        throw new IllegalStateException("Can't add targets after the accumulator is built");
+      }
+      myAddressInfos.addAll(info.getAddressInfos());
+      myTargets.addAll(info.getTargets());
+      myLibraries.addAll(info.getLibraries());
+      myExcludes.addAll(info.getExcludes());
+      myRoots.addAll(info.getRoots());
+      return this;
+    }
+
+    public boolean isEmpty() {
+      return myLibraries.isEmpty() && myTargets.isEmpty() && myRoots.isEmpty() && myAddressInfos.isEmpty();
+    }
+
+    /**
+     * Hands the accumulated sets over to the result, so it can be called only once.
+     */
+    @NotNull
+    public TargetInfo build() {
+      if (myBuilt) {
+        throw new IllegalStateException("The accumulator is already built");
+      }
+      myBuilt = true;
+      return new TargetInfo(this);
+    }
   }
 
   @Override
@@ -17,7 +17,6 @@ import org.jetbrains.annotations.NotNull;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -54,7 +53,7 @@ public class PantsCommonSourceRootModifier implements PantsProjectInfoModifierEx
       projectInfo.addTarget(commonTargetNameAndInfo.getFirst(), commonTargetNameAndInfo.getSecond());
       for (Pair<String, TargetInfo> nameAndInfo : targetNameAndInfos) {
         nameAndInfo.getSecond().getRoots().remove(commonContentRoot);
-        nameAndInfo.getSecond().addDependency(commonTargetNameAndInfo.getFirst());
+        projectInfo.addDependency(nameAndInfo.getFirst(), commonTargetNameAndInfo.getFirst());
       }
     }
   }
@@ -100,13 +99,13 @@ public class PantsCommonSourceRootModifier implements PantsProjectInfoModifierEx
     @NotNull List<Pair<String, TargetInfo>> targetNameAndInfos,
     @NotNull ContentRoot originalContentRoot
   ) {
-    final Iterator<Pair<String, TargetInfo>> iterator = targetNameAndInfos.iterator();
-    TargetInfo commonInfo = iterator.next().getSecond();
-    while (iterator.hasNext()) {
-      commonInfo = commonInfo.union(iterator.next().getSecond());
+    final TargetInfo.Accumulator accumulator = new TargetInfo.Accumulator();
+    for (Pair<String, TargetInfo> nameAndInfo : targetNameAndInfos) {
+      accumulator.add(nameAndInfo.getSecond());
     }
+    final TargetInfo commonInfo = accumulator.build();
     // make sure we won't have cyclic deps
-    commonInfo.getTargets().removeAll(targetNameAndInfos.stream().map(s -> s.getFirst()).collect(Collectors.toSet()));
+    commonInfo.removeDependencies(targetNameAndInfos.stream().map(s -> s.getFirst()).collect(Collectors.toSet()));
 
     final Set<ContentRoot> newRoots = ContainerUtil.newHashSet(originalContentRoot);
     commonInfo.setRoots(newRoots);
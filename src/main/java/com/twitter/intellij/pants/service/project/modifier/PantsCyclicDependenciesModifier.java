@@ -11,49 +11,116 @@ import com.twitter.intellij.pants.PantsException;
 import com.twitter.intellij.pants.service.PantsCompileOptionsExecutor;
 import com.twitter.intellij.pants.service.project.PantsProjectInfoModifierExtension;
 import com.twitter.intellij.pants.service.project.model.ProjectInfo;
+import com.twitter.intellij.pants.service.project.model.TargetGraph;
 import com.twitter.intellij.pants.service.project.model.TargetInfo;
 import org.jetbrains.annotations.NotNull;
 
-import java.util.HashSet;
-import java.util.Map;
-import java.util.Set;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
+/**
+ * Collapses every cycle in the target graph into a single combined target.
+ * Cycles are found as strongly connected components with one pass of Tarjan's algorithm.
+ */
 public class PantsCyclicDependenciesModifier implements PantsProjectInfoModifierExtension {
   @Override
   public void modify(@NotNull ProjectInfo projectInfo, @NotNull PantsCompileOptionsExecutor executor, @NotNull Logger log) {
-    final Set<Map.Entry<String, TargetInfo>> originalEntries =
-      new HashSet<>(projectInfo.getTargets().entrySet());
-    for (Map.Entry<String, TargetInfo> nameAndInfo : originalEntries) {
-      final String targetName = nameAndInfo.getKey();
-      final TargetInfo targetInfo = nameAndInfo.getValue();
-      if (!projectInfo.getTargets().containsKey(targetName)) {
-        // already removed
-        continue;
-      }
-      for (String dependencyTargetName : targetInfo.getTargets()) {
-        TargetInfo dependencyTargetInfo = projectInfo.getTarget(dependencyTargetName);
-        if (dependencyTargetInfo != null && dependencyTargetInfo.dependOn(targetName)) {
-
-          if (targetName.equals(dependencyTargetName)) {
-            throw new PantsException(String.format("Self cyclic dependency found %s", targetName));
-          }
-
-          log.info(String.format("Found cyclic dependency between %s and %s", targetName, dependencyTargetName));
+    for (List<String> cycle : findCycles(projectInfo)) {
+      log.info(String.format("Found cyclic dependency between %s", StringUtil.join(cycle, ", ")));
 
-          final String combinedTargetName = combinedTargetsName(targetName, dependencyTargetName);
-          final TargetInfo combinedInfo = targetInfo.union(dependencyTargetInfo);
-          combinedInfo.removeDependency(targetName);
-          combinedInfo.removeDependency(dependencyTargetName);
-          projectInfo.addTarget(combinedTargetName, combinedInfo);
+      final String combinedTargetName = combinedTargetsName(cycle.toArray(new String[0]));
+      projectInfo.addTarget(combinedTargetName, combinedTargetInfo(projectInfo, cycle));
+      for (String targetName : cycle) {
+        projectInfo.replaceDependency(targetName, combinedTargetName);
+        projectInfo.removeTarget(targetName);
+      }
+    }
+  }
 
-          projectInfo.replaceDependency(targetName, combinedTargetName);
-          projectInfo.removeTarget(targetName);
+  /**
+   * @return strongly connected components with more than one target, in a deterministic order.
+   */
+  @NotNull
+  private static List<List<String>> findCycles(@NotNull ProjectInfo projectInfo) {
+    final TargetGraph graph = TargetGraph.of(projectInfo);
+    final int size = graph.size();
+    for (int i = 0; i < size; i++) {
+      for (int dependency : graph.getDependencies(i)) {
+        if (dependency == i) {
+          throw new PantsException(String.format("Self cyclic dependency found %s", graph.getName(i)));
+        }
+      }
+    }
 
-          projectInfo.replaceDependency(dependencyTargetName, combinedTargetName);
-          projectInfo.removeTarget(dependencyTargetName);
+    // Iterative version of Tarjan's algorithm, so deep dependency chains do not overflow the stack.
+    final List<List<String>> result = new ArrayList<>();
+    final int[] index = new int[size];
+    final int[] lowLink = new int[size];
+    final boolean[] onStack = new boolean[size];
+    final int[] stack = new int[size];
+    final int[] callStack = new int[size];
+    final int[] nextEdge = new int[size];
+    Arrays.fill(index, -1);
+    int nextIndex = 0;
+    int stackSize = 0;
+    for (int root = 0; root < size; root++) {
+      if (index[root] != -1) {
+        continue;
+      }
+      int callDepth = 0;
+      callStack[callDepth++] = root;
+      index[root] = lowLink[root] = nextIndex++;
+      stack[stackSize++] = root;
+      onStack[root] = true;
+      while (callDepth > 0) {
+        final int node = callStack[callDepth - 1];
+        if (nextEdge[node] < graph.getDependencies(node).length) {
+          final int dependency = graph.getDependencies(node)[nextEdge[node]++];
+          if (index[dependency] == -1) {
+            index[dependency] = lowLink[dependency] = nextIndex++;
+            stack[stackSize++] = dependency;
+            onStack[dependency] = true;
+            callStack[callDepth++] = dependency;
+          }
+          else if (onStack[dependency]) {
+            lowLink[node] = Math.min(lowLink[node], index[dependency]);
+          }
+          continue;
+        }
+        callDepth--;
+        if (callDepth > 0) {
+          final int parent = callStack[callDepth - 1];
+          lowLink[parent] = Math.min(lowLink[parent], lowLink[node]);
+        }
+        if (lowLink[node] == index[node]) {
+          final List<String> component = new ArrayList<>();
+          int member;
+          do {
+            member = stack[--stackSize];
+            onStack[member] = false;
+            component.add(graph.getName(member));
+          }
+          while (member != node);
+          if (component.size() > 1) {
+            component.sort(null);
+            result.add(component);
+          }
         }
       }
     }
+    return result;
+  }
+
+  @NotNull
+  private static TargetInfo combinedTargetInfo(@NotNull ProjectInfo projectInfo, @NotNull List<String> cycle) {
+    final TargetInfo.Accumulator accumulator = new TargetInfo.Accumulator();
+    for (String targetName : cycle) {
+      accumulator.add(projectInfo.getTarget(targetName));
+    }
+    final TargetInfo result = accumulator.build();
+    result.removeDependencies(cycle);
+    return result;
   }
 
   @NotNull
@@ -7,27 +7,44 @@ import com.intellij.openapi.diagnostic.Logger;
 import com.twitter.intellij.pants.service.PantsCompileOptionsExecutor;
 import com.twitter.intellij.pants.service.project.PantsProjectInfoModifierExtension;
 import com.twitter.intellij.pants.service.project.model.ProjectInfo;
+import com.twitter.intellij.pants.service.project.model.TargetGraph;
 import com.twitter.intellij.pants.service.project.model.TargetInfo;
 import org.jetbrains.annotations.NotNull;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Map;
-
 public class PantsEmptyTargetRemover implements PantsProjectInfoModifierExtension {
   @Override
   public void modify(@NotNull ProjectInfo projectInfo, @NotNull PantsCompileOptionsExecutor executor, @NotNull Logger log) {
-    final List<String> emptyTargets = new ArrayList<>();
-    do {
-      emptyTargets.clear();
-      for (Map.Entry<String, TargetInfo> targetInfoEntry : projectInfo.getTargets().entrySet()) {
-        final String targetName = targetInfoEntry.getKey();
-        final TargetInfo targetInfo = targetInfoEntry.getValue();
-        if (targetInfo.isEmpty()) {
-          emptyTargets.add(targetName);
+    final TargetGraph graph = TargetGraph.of(projectInfo);
+    final int size = graph.size();
+    // A target is empty once it has no dependencies left and nothing else of its own.
+    final int[] dependencyCount = new int[size];
+    final boolean[] removed = new boolean[size];
+    final int[] emptyTargets = new int[size];
+    int emptyCount = 0;
+    for (int i = 0; i < size; i++) {
+      final TargetInfo info = projectInfo.getTarget(graph.getName(i));
+      dependencyCount[i] = info.getTargets().size();
+      if (info.isEmpty()) {
+        removed[i] = true;
+        emptyTargets[emptyCount++] = i;
+      }
+    }
+    // Removing a target can only make its dependents empty, so only those need to be checked again.
+    for (int next = 0; next < emptyCount; next++) {
+      for (int dependent : graph.getDependents(emptyTargets[next])) {
+        if (--dependencyCount[dependent] == 0 && !removed[dependent] && hasNothingButDependencies(projectInfo, graph, dependent)) {
+          removed[dependent] = true;
+          emptyTargets[emptyCount++] = dependent;
         }
       }
-      projectInfo.removeTargets(emptyTargets);
-    } while (!emptyTargets.isEmpty());
+    }
+    for (int i = 0; i < emptyCount; i++) {
+      projectInfo.removeTarget(graph.getName(emptyTargets[i]));
+    }
+  }
+
+  private static boolean hasNothingButDependencies(@NotNull ProjectInfo projectInfo, @NotNull TargetGraph graph, int id) {
+    final TargetInfo info = projectInfo.getTarget(graph.getName(id));
+    return info.getLibraries().isEmpty() && info.getRoots().isEmpty() && info.getAddressInfos().isEmpty();
   }
 }
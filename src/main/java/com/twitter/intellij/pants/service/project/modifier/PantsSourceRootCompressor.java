@@ -16,29 +16,57 @@ import com.twitter.intellij.pants.util.PantsUtil;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 public class PantsSourceRootCompressor implements PantsProjectInfoModifierExtension {
+  /**
+   * Package roots nested deeper than this are not compressed, which also stops the walk on symlink cycles.
+   */
+  private static final int MAX_DEPTH = 64;
+
   @Override
   public void modify(@NotNull ProjectInfo projectInfo, @NotNull PantsCompileOptionsExecutor executor, @NotNull Logger log) {
-    for (TargetInfo info : projectInfo.getTargets().values()) {
-      info.setRoots(compressRootsIfPossible(info.getRoots()));
+    // Targets usually share package roots, so listings are reused across targets for the whole resolve.
+    final Map<Path, Optional<DirectoryListing>> listings = new ConcurrentHashMap<>();
+    final List<TargetInfo> targets = new ArrayList<>(projectInfo.getTargets().values());
+    final List<Set<ContentRoot>> compressedRoots =
+      PantsUtil.mapInOrder(targets, executor.isParallelResolve(), info -> compressRootsIfPossible(info.getRoots(), listings));
+    for (int i = 0; i < targets.size(); i++) {
+      targets.get(i).setRoots(compressedRoots.get(i));
     }
   }
 
   @NotNull
-  private Set<ContentRoot> compressRootsIfPossible(@NotNull Set<ContentRoot> roots) {
+  private Set<ContentRoot> compressRootsIfPossible(
+    @NotNull Set<ContentRoot> roots,
+    @NotNull Map<Path, Optional<DirectoryListing>> listings
+  ) {
     final Set<String> packageRoots = roots.stream().map(ContentRoot::getPackageRoot).collect(Collectors.toSet());
     if (packageRoots.size() != 1) {
       return roots;
     }
     final String packageRoot = packageRoots.iterator().next();
     final Set<File> sourceRoots = roots.stream().map(ContentRoot::getRawSourceRoot).map(File::new).collect(Collectors.toSet());
+    final Set<Path> sourceRootPaths = sourceRoots.stream().map(File::toPath).collect(Collectors.toSet());
 
-    if (folderContainsOnlyRoots(new File(packageRoot), sourceRoots)) {
+    if (folderContainsOnlyRoots(Paths.get(packageRoot), sourceRootPaths, listings, 0)) {
       return Collections.singleton(new ContentRoot(packageRoot, ""));
     }
     Set<File> ancestorContentRootPaths = findAncestors(sourceRoots);
@@ -112,20 +140,99 @@ public class PantsSourceRootCompressor implements PantsProjectInfoModifierExtens
     return false;
   }
 
-  private boolean folderContainsOnlyRoots(@NotNull File root, Set<File> foldersWithSources) {
-    final File[] files = root.listFiles();
-    if (files == null) {
+  /**
+   * Lists the directory outside the map, so other threads don't wait on the listing while they look up other directories.
+   */
+  @NotNull
+  private static Optional<DirectoryListing> getListing(@NotNull Path root, @NotNull Map<Path, Optional<DirectoryListing>> listings) {
+    final Optional<DirectoryListing> cached = listings.get(root);
+    if (cached != null) {
+      return cached;
+    }
+    final Optional<DirectoryListing> listing = DirectoryListing.list(root);
+    final Optional<DirectoryListing> previous = listings.putIfAbsent(root, listing);
+    return previous != null ? previous : listing;
+  }
+
+  /**
+   * @return true if every directory under the root that has files other than BUILD files is one of the source roots.
+   */
+  private static boolean folderContainsOnlyRoots(
+    @NotNull Path root,
+    @NotNull Set<Path> foldersWithSources,
+    @NotNull Map<Path, Optional<DirectoryListing>> listings,
+    int depth
+  ) {
+    if (depth > MAX_DEPTH) {
       return false;
     }
-    for (File file : files) {
-      if (file.isFile() && !PantsUtil.isBUILDFileName(file.getName()) && !foldersWithSources.contains(root)) {
-        return false;
-      }
-      if (file.isDirectory() && !folderContainsOnlyRoots(file, foldersWithSources)) {
+    final Optional<DirectoryListing> listing = getListing(root, listings);
+    if (!listing.isPresent()) {
+      return false;
+    }
+    if (listing.get().hasNonBuildFiles() && !foldersWithSources.contains(root)) {
+      return false;
+    }
+    for (Path directory : listing.get().getSubdirectories()) {
+      if (!folderContainsOnlyRoots(directory, foldersWithSources, listings, depth + 1)) {
         return false;
       }
     }
-
     return true;
   }
+
+  /**
+   * What {@link #folderContainsOnlyRoots} needs to know about a directory, read with a single one-level walk.
+   */
+  private static class DirectoryListing {
+    private final List<Path> mySubdirectories = new ArrayList<>();
+    private boolean myHasNonBuildFiles = false;
+
+    @NotNull
+    private List<Path> getSubdirectories() {
+      return mySubdirectories;
+    }
+
+    private boolean hasNonBuildFiles() {
+      return myHasNonBuildFiles;
+    }
+
+    /**
+     * @return the listing, or empty if the directory can't be read.
+     */
+    @NotNull
+    private static Optional<DirectoryListing> list(@NotNull Path directory) {
+      if (!Files.isDirectory(directory)) {
+        return Optional.empty();
+      }
+      final DirectoryListing result = new DirectoryListing();
+      try {
+        // With a max depth of 1 subdirectories are reported to visitFile with the attributes already read by the walk.
+        Files.walkFileTree(directory, EnumSet.of(FileVisitOption.FOLLOW_LINKS), 1, new SimpleFileVisitor<Path>() {
+          @Override
+          public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+            if (attrs.isDirectory()) {
+              result.mySubdirectories.add(file);
+            }
+            else if (attrs.isRegularFile() && !PantsUtil.isBUILDFileName(file.getFileName().toString())) {
+              result.myHasNonBuildFiles = true;
+            }
+            return FileVisitResult.CONTINUE;
+          }
+
+          @Override
+          public FileVisitResult visitFileFailed(Path file, IOException e) throws IOException {
+            if (file.equals(directory)) {
+              throw e;
+            }
+            return FileVisitResult.CONTINUE;
+          }
+        });
+      }
+      catch (IOException e) {
+        return Optional.empty();
+      }
+      return Optional.of(result);
+    }
+  }
 }
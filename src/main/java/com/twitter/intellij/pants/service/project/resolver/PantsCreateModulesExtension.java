@@ -82,7 +82,6 @@ public class PantsCreateModulesExtension implements PantsResolverExtension {
     }
 
     metadata.setTargetAddresses(ContainerUtil.map(targetInfo.getAddressInfos(), TargetAddressInfo::getTargetAddress));
-    metadata.setTargetAddressInfoSet(targetInfo.getAddressInfos());
     metadata.setLibraryExcludes(targetInfo.getExcludes());
     moduleDataNode.createChild(TargetMetadata.KEY, metadata);
 
@@ -3,6 +3,7 @@
 
 package com.twitter.intellij.pants.service.project.resolver;
 
+import com.google.common.hash.Hashing;
 import com.intellij.openapi.externalSystem.model.DataNode;
 import com.intellij.openapi.externalSystem.model.ProjectKeys;
 import com.intellij.openapi.externalSystem.model.project.*;
@@ -13,11 +14,18 @@ import com.twitter.intellij.pants.service.project.model.LibraryInfo;
 import com.twitter.intellij.pants.service.project.model.ProjectInfo;
 import com.twitter.intellij.pants.service.project.model.TargetInfo;
 import com.twitter.intellij.pants.util.PantsConstants;
+import com.twitter.intellij.pants.util.PantsUtil;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.stream.Collectors;
 
 public class PantsLibrariesExtension implements PantsResolverExtension {
   @Override
@@ -27,51 +35,125 @@ public class PantsLibrariesExtension implements PantsResolverExtension {
     @NotNull DataNode<ProjectData> projectDataNode,
     @NotNull Map<String, DataNode<ModuleData>> modules
   ) {
-    for (Map.Entry<String, TargetInfo> entry : projectInfo.getSortedTargets()) {
-      final TargetInfo targetInfo = entry.getValue();
+    final List<Map.Entry<String, TargetInfo>> targets = projectInfo.getSortedTargets().stream()
+      .filter(entry -> hasLibraries(entry.getValue(), executor))
+      .collect(Collectors.toList());
+    // Checking that every jar exists is the expensive part, so it is the one that can run in parallel.
+    final List<LibraryData> libraries = PantsUtil.mapInOrder(
+      targets,
+      executor.isParallelResolve(),
+      entry -> createLibraryData(entry.getKey(), entry.getValue(), projectInfo, executor)
+    );
 
-      if (executor.getOptions().isImportSourceDepsAsJars()) {
-        if (targetInfo.isPythonTarget()) {
-          continue;
-        }
+    // Targets that resolve to the same jars share one project library.
+    final Map<List<String>, List<Integer>> jarSetToTargets = new LinkedHashMap<>();
+    for (int i = 0; i < targets.size(); i++) {
+      final List<String> jarSet = getJarSet(libraries.get(i));
+      if (!jarSet.isEmpty()) {
+        jarSetToTargets.computeIfAbsent(jarSet, key -> new ArrayList<>()).add(i);
       }
-      else if (!targetInfo.isJarLibrary()) {
-        continue;
+      else if (!targets.get(i).getValue().getLibraries().isEmpty()) {
+        LOG.warn("Skipping the library of " + targets.get(i).getKey() + " because none of its jars exist");
       }
+    }
 
-      final String jarTarget = entry.getKey();
-      final LibraryData libraryData = new LibraryData(PantsConstants.SYSTEM_ID, jarTarget);
-
-      for (String libraryId : targetInfo.getLibraries()) {
-        final LibraryInfo libraryInfo = projectInfo.getLibraries(libraryId);
-        if (libraryInfo == null) {
-          LOG.debug("Couldn't find library " + libraryId);
+    for (Map.Entry<List<String>, List<Integer>> entry : jarSetToTargets.entrySet()) {
+      final List<Integer> targetIndices = entry.getValue();
+      final LibraryData libraryData = copyLibraryData(libraries.get(targetIndices.get(0)), getLibraryName(entry.getKey()));
+      projectDataNode.createChild(ProjectKeys.LIBRARY, libraryData);
+      for (int targetIndex : targetIndices) {
+        final DataNode<ModuleData> moduleDataNode = modules.get(targets.get(targetIndex).getKey());
+        if (moduleDataNode == null) {
           continue;
         }
 
-        addPathLoLibrary(libraryData, executor, LibraryPathType.BINARY, libraryInfo.getDefault());
-        addPathLoLibrary(libraryData, executor, LibraryPathType.SOURCE, libraryInfo.getSources());
-        addPathLoLibrary(libraryData, executor, LibraryPathType.DOC, libraryInfo.getJavadoc());
+        final LibraryDependencyData library = new LibraryDependencyData(
+          moduleDataNode.getData(),
+          libraryData,
+          LibraryLevel.PROJECT
+        );
+        library.setExported(true);
+        moduleDataNode.createChild(ProjectKeys.LIBRARY_DEPENDENCY, library);
+      }
+    }
+  }
 
-        for (String otherLibraryInfo : libraryInfo.getJarsWithCustomClassifiers()) {
-          addPathLoLibrary(libraryData, executor, LibraryPathType.BINARY, otherLibraryInfo);
-        }
+  /**
+   * @return sorted paths of the library prefixed with their type, empty if the library has none.
+   */
+  @NotNull
+  private static List<String> getJarSet(@NotNull LibraryData libraryData) {
+    final List<String> result = new ArrayList<>();
+    for (LibraryPathType type : LibraryPathType.values()) {
+      for (String path : libraryData.getPaths(type)) {
+        result.add(type.name() + ":" + path);
       }
+    }
+    Collections.sort(result);
+    return result;
+  }
 
-      projectDataNode.createChild(ProjectKeys.LIBRARY, libraryData);
-      final DataNode<ModuleData> moduleDataNode = modules.get(jarTarget);
-      if (moduleDataNode == null) {
+  /**
+   * The name only depends on the jars, so a library keeps its name across refreshes as long as its jars stay the same,
+   * whether one target or several ones resolve to them.
+   */
+  @NotNull
+  private static String getLibraryName(@NotNull List<String> jarSet) {
+    final String hash = Hashing.murmur3_128()
+      .hashString(String.join("\n", jarSet), StandardCharsets.UTF_8)
+      .toString()
+      .substring(0, 12);
+    final String binaryPrefix = LibraryPathType.BINARY.name() + ":";
+    return jarSet.stream()
+      .filter(jar -> jar.startsWith(binaryPrefix))
+      .findFirst()
+      .map(jar -> new File(jar.substring(binaryPrefix.length())).getName() + "-" + hash)
+      .orElse("pants-jars-" + hash);
+  }
+
+  @NotNull
+  private static LibraryData copyLibraryData(@NotNull LibraryData libraryData, @NotNull String name) {
+    final LibraryData result = new LibraryData(PantsConstants.SYSTEM_ID, name);
+    for (LibraryPathType type : LibraryPathType.values()) {
+      for (String path : libraryData.getPaths(type)) {
+        result.addPath(type, path);
+      }
+    }
+    return result;
+  }
+
+  private static boolean hasLibraries(@NotNull TargetInfo targetInfo, @NotNull PantsCompileOptionsExecutor executor) {
+    if (executor.getOptions().isImportSourceDepsAsJars()) {
+      return !targetInfo.isPythonTarget();
+    }
+    return targetInfo.isJarLibrary();
+  }
+
+  @NotNull
+  private LibraryData createLibraryData(
+    @NotNull String jarTarget,
+    @NotNull TargetInfo targetInfo,
+    @NotNull ProjectInfo projectInfo,
+    @NotNull PantsCompileOptionsExecutor executor
+  ) {
+    final LibraryData libraryData = new LibraryData(PantsConstants.SYSTEM_ID, jarTarget);
+
+    for (String libraryId : targetInfo.getLibraries()) {
+      final LibraryInfo libraryInfo = projectInfo.getLibraries(libraryId);
+      if (libraryInfo == null) {
+        LOG.debug("Couldn't find library " + libraryId);
         continue;
       }
 
-      final LibraryDependencyData library = new LibraryDependencyData(
-        moduleDataNode.getData(),
-        libraryData,
-        LibraryLevel.PROJECT
-      );
-      library.setExported(true);
-      moduleDataNode.createChild(ProjectKeys.LIBRARY_DEPENDENCY, library);
+      addPathLoLibrary(libraryData, executor, LibraryPathType.BINARY, libraryInfo.getDefault());
+      addPathLoLibrary(libraryData, executor, LibraryPathType.SOURCE, libraryInfo.getSources());
+      addPathLoLibrary(libraryData, executor, LibraryPathType.DOC, libraryInfo.getJavadoc());
+
+      for (String otherLibraryInfo : libraryInfo.getJarsWithCustomClassifiers()) {
+        addPathLoLibrary(libraryData, executor, LibraryPathType.BINARY, otherLibraryInfo);
+      }
     }
+    return libraryData;
   }
 
   private void addPathLoLibrary(
@@ -15,8 +15,10 @@ import com.twitter.intellij.pants.service.project.model.TargetInfo;
 import com.twitter.intellij.pants.util.PantsUtil;
 import org.jetbrains.annotations.NotNull;
 
-import java.util.List;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 
 public class PantsModuleDependenciesExtension implements PantsResolverExtension {
   @Override
@@ -26,6 +28,7 @@ public class PantsModuleDependenciesExtension implements PantsResolverExtension
     @NotNull DataNode<ProjectData> projectDataNode,
     @NotNull Map<String, DataNode<ModuleData>> modules
   ) {
+    final ModuleDependencies dependencies = new ModuleDependencies();
     for (Map.Entry<String, TargetInfo> entry : projectInfo.getSortedTargets()) {
       final String mainTarget = entry.getKey();
       final TargetInfo targetInfo = entry.getValue();
@@ -37,23 +40,50 @@ public class PantsModuleDependenciesExtension implements PantsResolverExtension
         if (!modules.containsKey(target)) {
           continue;
         }
-        addModuleDependency(moduleDataNode, modules.get(target), true);
+        dependencies.addModuleDependency(moduleDataNode, modules.get(target), true);
       }
     }
   }
 
-  private void addModuleDependency(DataNode<ModuleData> moduleDataNode, DataNode<ModuleData> submoduleDataNode, boolean exported) {
-    final List<ModuleDependencyData> subModuleDeps = PantsUtil.findChildren(submoduleDataNode, ProjectKeys.MODULE_DEPENDENCY);
-    for (ModuleDependencyData dep : subModuleDeps) {
-      if (dep.getTarget().equals(moduleDataNode.getData())) {
+  /**
+   * Module dependency edges of a single resolve, encoded as pairs of int module ids,
+   * so checking for the reverse edge does not scan the dependencies of the submodule.
+   */
+  private static class ModuleDependencies {
+    private final Map<ModuleData, Integer> myModuleIds = new HashMap<>();
+    // Modules whose dependencies created before this resolver ran are already in myEdges.
+    private final Set<Integer> myLoadedModules = new HashSet<>();
+    private final Set<Long> myEdges = new HashSet<>();
+
+    private void addModuleDependency(DataNode<ModuleData> moduleDataNode, DataNode<ModuleData> submoduleDataNode, boolean exported) {
+      if (hasDependency(submoduleDataNode, moduleDataNode.getData())) {
         return;
       }
+      final ModuleDependencyData moduleDependencyData = new ModuleDependencyData(
+        moduleDataNode.getData(),
+        submoduleDataNode.getData()
+      );
+      moduleDependencyData.setExported(exported);
+      moduleDataNode.createChild(ProjectKeys.MODULE_DEPENDENCY, moduleDependencyData);
+      myEdges.add(edge(getModuleId(moduleDataNode.getData()), getModuleId(submoduleDataNode.getData())));
+    }
+
+    private boolean hasDependency(@NotNull DataNode<ModuleData> moduleDataNode, @NotNull ModuleData dependency) {
+      final int moduleId = getModuleId(moduleDataNode.getData());
+      if (myLoadedModules.add(moduleId)) {
+        for (ModuleDependencyData dep : PantsUtil.findChildren(moduleDataNode, ProjectKeys.MODULE_DEPENDENCY)) {
+          myEdges.add(edge(moduleId, getModuleId(dep.getTarget())));
+        }
+      }
+      return myEdges.contains(edge(moduleId, getModuleId(dependency)));
+    }
+
+    private int getModuleId(@NotNull ModuleData moduleData) {
+      return myModuleIds.computeIfAbsent(moduleData, data -> myModuleIds.size());
+    }
+
+    private static long edge(int from, int to) {
+      return ((long) from << 32) | (to & 0xFFFFFFFFL);
     }
-    final ModuleDependencyData moduleDependencyData = new ModuleDependencyData(
-      moduleDataNode.getData(),
-      submoduleDataNode.getData()
-    );
-    moduleDependencyData.setExported(exported);
-    moduleDataNode.createChild(ProjectKeys.MODULE_DEPENDENCY, moduleDependencyData);
   }
 }
@@ -8,6 +8,7 @@ import com.intellij.openapi.externalSystem.model.ProjectKeys;
 import com.intellij.openapi.externalSystem.model.project.ContentRootData;
 import com.intellij.openapi.externalSystem.model.project.ModuleData;
 import com.intellij.openapi.externalSystem.model.project.ProjectData;
+import com.intellij.openapi.util.SystemInfo;
 import com.intellij.openapi.util.io.FileUtil;
 import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.util.containers.ContainerUtil;
@@ -18,7 +19,9 @@ import com.twitter.intellij.pants.service.project.model.ContentRoot;
 import com.twitter.intellij.pants.service.project.model.ProjectInfo;
 import com.twitter.intellij.pants.service.project.model.TargetInfo;
 import com.twitter.intellij.pants.util.PantsConstants;
+import com.twitter.intellij.pants.util.PantsUtil;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.util.*;
 import java.util.stream.Collectors;
@@ -32,15 +35,6 @@ public class PantsSourceRootsExtension implements PantsResolverExtension {
     return targetInfo.isPythonTarget() || PantsSourceType.isResource(targetInfo.getSourcesType());
   }
 
-  private static boolean hasAnAncestorRoot(@NotNull Collection<String> baseSourceRoots, @NotNull String root) {
-    for (String sourceRoot : baseSourceRoots) {
-      if (FileUtil.isAncestor(sourceRoot, root, false)) {
-        return true;
-      }
-    }
-    return false;
-  }
-
 
   @Override
   public void resolve(
@@ -49,49 +43,56 @@ public class PantsSourceRootsExtension implements PantsResolverExtension {
     @NotNull DataNode<ProjectData> projectDataNode,
     @NotNull Map<String, DataNode<ModuleData>> modules
   ) {
-    for (Map.Entry<String, TargetInfo> entry : projectInfo.getSortedTargets()) {
-      final String targetAddress = entry.getKey();
-      final TargetInfo targetInfo = entry.getValue();
-      if (!modules.containsKey(targetAddress)) {
-        continue;
-      }
-      final DataNode<ModuleData> moduleDataNode = modules.get(targetAddress);
+    final List<Map.Entry<String, TargetInfo>> targets = projectInfo.getSortedTargets().stream()
+      .filter(entry -> modules.containsKey(entry.getKey()))
+      .collect(Collectors.toList());
+    final List<List<ContentRootData>> contentRoots =
+      PantsUtil.mapInOrder(targets, executor.isParallelResolve(), entry -> createContentRoots(entry.getValue()));
 
-      createContentRoots(moduleDataNode, targetInfo);
+    for (int i = 0; i < targets.size(); i++) {
+      final DataNode<ModuleData> moduleDataNode = modules.get(targets.get(i).getKey());
+      for (ContentRootData contentRoot : contentRoots.get(i)) {
+        moduleDataNode.createChild(ProjectKeys.CONTENT_ROOT, contentRoot);
+      }
     }
   }
 
-  private void createContentRoots(@NotNull DataNode<ModuleData> moduleDataNode, @NotNull final TargetInfo targetInfo) {
+  @NotNull
+  private List<ContentRootData> createContentRoots(@NotNull final TargetInfo targetInfo) {
     final Set<ContentRoot> roots = targetInfo.getRoots();
     if (roots.isEmpty()) {
-      return;
+      return Collections.emptyList();
     }
 
-    for (String baseRoot : findBaseRoots(targetInfo, roots)) {
-      final ContentRootData contentRoot = new ContentRootData(PantsConstants.SYSTEM_ID, baseRoot);
-      moduleDataNode.createChild(ProjectKeys.CONTENT_ROOT, contentRoot);
-
-      for (ContentRoot sourceRoot : roots) {
-        final String sourceRootPathToAdd = getSourceRootRegardingTargetType(targetInfo, sourceRoot);
-        if (FileUtil.isAncestor(baseRoot, sourceRootPathToAdd, false)) {
-          try {
-            contentRoot.storePath(
-              targetInfo.getSourcesType().toExternalSystemSourceType(),
-              sourceRootPathToAdd,
-              doNotSupportPackagePrefixes(targetInfo) ? null : sourceRoot.getPackagePrefix()
-            );
-          }
-          catch (IllegalArgumentException e) {
-            LOG.warn(e);
-            // todo(fkorotkov): log and investigate exceptions from ContentRootData.storePath(ContentRootData.java:94)
-          }
-        }
+    final BaseRootTrie baseRoots = findBaseRoots(targetInfo, roots);
+    final Map<String, ContentRootData> result = new LinkedHashMap<>();
+    for (String baseRoot : baseRoots.getBaseRoots()) {
+      result.put(baseRoot, new ContentRootData(PantsConstants.SYSTEM_ID, baseRoot));
+    }
+
+    for (ContentRoot sourceRoot : roots) {
+      final String sourceRootPathToAdd = getSourceRootRegardingTargetType(targetInfo, sourceRoot);
+      final String baseRoot = baseRoots.findBaseRoot(sourceRootPathToAdd);
+      if (baseRoot == null) {
+        continue;
+      }
+      try {
+        result.get(baseRoot).storePath(
+          targetInfo.getSourcesType().toExternalSystemSourceType(),
+          sourceRootPathToAdd,
+          doNotSupportPackagePrefixes(targetInfo) ? null : sourceRoot.getPackagePrefix()
+        );
+      }
+      catch (IllegalArgumentException e) {
+        LOG.warn(e);
+        // todo(fkorotkov): log and investigate exceptions from ContentRootData.storePath(ContentRootData.java:94)
       }
     }
+    return new ArrayList<>(result.values());
   }
 
   @NotNull
-  private List<String> findBaseRoots(@NotNull final TargetInfo targetInfo, Set<ContentRoot> roots) {
+  private BaseRootTrie findBaseRoots(@NotNull final TargetInfo targetInfo, Set<ContentRoot> roots) {
     Set<String> allRoots = roots.stream()
       .map(root -> getSourceRootRegardingTargetType(targetInfo, root))
       .collect(Collectors.toSet());
@@ -101,12 +102,66 @@ public class PantsSourceRootsExtension implements PantsResolverExtension {
       StringUtil::naturalCompare
     );
 
-    final List<String> baseRoots = new ArrayList<>();
+    // Ancestors sort before their descendants, so a root is a base root iff no base root found so far contains it.
+    final BaseRootTrie baseRoots = new BaseRootTrie();
     for (String root : sortedRoots) {
-      if (!hasAnAncestorRoot(baseRoots, root)) {
+      if (baseRoots.findBaseRoot(root) == null) {
         baseRoots.add(root);
       }
     }
     return baseRoots;
   }
+
+  /**
+   * Trie over path segments of the base roots, so finding the base root that contains a path
+   * is linear in the length of the path instead of the number of base roots.
+   */
+  private static class BaseRootTrie {
+    private final Node myRoot = new Node();
+    private final List<String> myBaseRoots = new ArrayList<>();
+
+    private static class Node {
+      private final Map<String, Node> myChildren = new HashMap<>();
+      @Nullable
+      private String myBaseRoot;
+    }
+
+    @NotNull
+    private List<String> getBaseRoots() {
+      return myBaseRoots;
+    }
+
+    private void add(@NotNull String baseRoot) {
+      Node node = myRoot;
+      for (String segment : segments(baseRoot)) {
+        node = node.myChildren.computeIfAbsent(segment, s -> new Node());
+      }
+      node.myBaseRoot = baseRoot;
+      myBaseRoots.add(baseRoot);
+    }
+
+    /**
+     * @return the base root that is the path itself or one of its ancestors, same as {@link FileUtil#isAncestor(String, String, boolean)}.
+     */
+    @Nullable
+    private String findBaseRoot(@NotNull String path) {
+      Node node = myRoot;
+      for (String segment : segments(path)) {
+        if (node.myBaseRoot != null) {
+          return node.myBaseRoot;
+        }
+        node = node.myChildren.get(segment);
+        if (node == null) {
+          return null;
+        }
+      }
+      return node.myBaseRoot;
+    }
+
+    @NotNull
+    private static List<String> segments(@NotNull String path) {
+      final String canonicalPath = FileUtil.toCanonicalPath(path);
+      return StringUtil.split(SystemInfo.isFileSystemCaseSensitive ? canonicalPath : canonicalPath.toLowerCase(Locale.ROOT), "/");
+    }
+  }
 }
@@ -27,8 +27,8 @@ public class PythonInfoModifier implements PantsProjectInfoModifierExtension {
     @NotNull PantsCompileOptionsExecutor executor,
     @NotNull Logger log
   ) {
-    TargetInfo sources = new TargetInfo();
-    TargetInfo tests = new TargetInfo();
+    final TargetInfo.Accumulator sourcesAccumulator = new TargetInfo.Accumulator();
+    final TargetInfo.Accumulator testsAccumulator = new TargetInfo.Accumulator();
     final Set<String> pythonTargetNames = new HashSet<>();
     for (Map.Entry<String, TargetInfo> entry : projectInfo.getTargets().entrySet()) {
       final String targetName = entry.getKey();
@@ -38,26 +38,28 @@ public class PythonInfoModifier implements PantsProjectInfoModifierExtension {
       }
       pythonTargetNames.add(targetName);
       if (targetInfo.isTest()) {
-        tests = tests.union(targetInfo);
+        testsAccumulator.add(targetInfo);
       } else {
-        sources = sources.union(targetInfo);
+        sourcesAccumulator.add(targetInfo);
       }
     }
-    if (sources.isEmpty()) {
+    if (sourcesAccumulator.isEmpty()) {
       return;
     }
+    final TargetInfo sources = sourcesAccumulator.build();
+    final TargetInfo tests = testsAccumulator.build();
     projectInfo.removeTargets(pythonTargetNames);
     if (!pythonTargetNames.isEmpty() && log.isDebugEnabled()) {
       log.debug(String.format("Combining %d python targets", pythonTargetNames.size()));
     }
 
-    sources.getTargets().removeAll(pythonTargetNames);
+    sources.removeDependencies(pythonTargetNames);
     projectInfo.addTarget("python:src", sources);
     if (!tests.isEmpty()) {
       // make sure src and test don't have common roots
       sources.getRoots().removeAll(tests.getRoots());
-      tests.getTargets().removeAll(pythonTargetNames);
-      tests.getTargets().add("python:src");
+      tests.removeDependencies(pythonTargetNames);
+      tests.addDependency("python:src");
       projectInfo.addTarget("python:tests", tests);
     }
   }
@@ -17,32 +17,69 @@ public class PantsExecutionSettings extends ExternalSystemExecutionSettings impl
   private final String myName;
   private final boolean myLibsWithSourcesAndDocs;
   private final boolean myImportSourceDepsAsJars;
+  private final boolean myUseExportCache;
+  private final boolean myParallelResolve;
+  private final int myExportShards;
   private final List<String> myTargetSpecs;
 
   private static final String DEFAULT_PROJECT_NAME = null;
   private static final List<String> DEFAULT_TARGET_SPECS = Collections.emptyList();
   private static final boolean DEFAULT_WITH_SOURCES_AND_DOCS = true;
   private static final boolean DEFAULT_IMPORT_SOURCE_DEPS_AS_JARS = false;
+  private static final boolean DEFAULT_USE_EXPORT_CACHE = false;
+  private static final boolean DEFAULT_PARALLEL_RESOLVE = false;
+  private static final int DEFAULT_EXPORT_SHARDS = 1;
 
   public static PantsExecutionSettings createDefault() {
     return new PantsExecutionSettings(
       DEFAULT_PROJECT_NAME,
       DEFAULT_TARGET_SPECS,
       DEFAULT_WITH_SOURCES_AND_DOCS,
-      DEFAULT_IMPORT_SOURCE_DEPS_AS_JARS
+      DEFAULT_IMPORT_SOURCE_DEPS_AS_JARS,
+      DEFAULT_USE_EXPORT_CACHE,
+      DEFAULT_PARALLEL_RESOLVE,
+      DEFAULT_EXPORT_SHARDS
     );
   }
 
+  /**
+   * @param useExportCache   whether to reuse the last `pants export` output when no BUILD or config file changed.
+   * @param parallelResolve  whether resolver extensions may compute per-target data on several threads.
+   * @param exportShards     number of `pants export` processes to split the target specs between.
+   */
   public PantsExecutionSettings(
     String name,
     List<String> targetSpecs,
     boolean libsWithSourcesAndDocs,
-    boolean importSourceDepsAsJars
+    boolean importSourceDepsAsJars,
+    boolean useExportCache,
+    boolean parallelResolve,
+    int exportShards
   ){
     myName = name;
     myTargetSpecs = targetSpecs;
     myLibsWithSourcesAndDocs = libsWithSourcesAndDocs;
     myImportSourceDepsAsJars = importSourceDepsAsJars;
+    myUseExportCache = useExportCache;
+    myParallelResolve = parallelResolve;
+    myExportShards = Math.max(1, exportShards);
+  }
+
+  public PantsExecutionSettings(
+    String name,
+    List<String> targetSpecs,
+    boolean libsWithSourcesAndDocs,
+    boolean importSourceDepsAsJars
+  ){
+    this(
+      name,
+      targetSpecs,
+      libsWithSourcesAndDocs,
+      importSourceDepsAsJars,
+      DEFAULT_USE_EXPORT_CACHE,
+      DEFAULT_PARALLEL_RESOLVE,
+      DEFAULT_EXPORT_SHARDS
+    );
   }
 
   /**
@@ -76,6 +113,18 @@ public class PantsExecutionSettings extends ExternalSystemExecutionSettings impl
     return myImportSourceDepsAsJars;
   }
 
+  public boolean isUseExportCache() {
+    return myUseExportCache;
+  }
+
+  public boolean isParallelResolve() {
+    return myParallelResolve;
+  }
+
+  public int getExportShards() {
+    return myExportShards;
+  }
+
   @Override
   public boolean equals(Object o) {
     if (this == o) return true;
@@ -84,11 +133,14 @@ public class PantsExecutionSettings extends ExternalSystemExecutionSettings impl
 
     PantsExecutionSettings settings = (PantsExecutionSettings) o;
     return Objects.equals(myLibsWithSourcesAndDocs, settings.myLibsWithSourcesAndDocs) &&
+           Objects.equals(myUseExportCache, settings.myUseExportCache) &&
+           Objects.equals(myParallelResolve, settings.myParallelResolve) &&
+           myExportShards == settings.myExportShards &&
            Objects.equals(myTargetSpecs, settings.myTargetSpecs);
   }
 
   @Override
   public int hashCode() {
-    return Objects.hash(myTargetSpecs, myLibsWithSourcesAndDocs);
+    return Objects.hash(myTargetSpecs, myLibsWithSourcesAndDocs, myUseExportCache, myParallelResolve, myExportShards);
   }
 }
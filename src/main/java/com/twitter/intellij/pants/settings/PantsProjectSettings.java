@@ -19,6 +19,9 @@ public class PantsProjectSettings extends ExternalProjectSettings implements Pan
   private List<String> myAllAvailableTargetSpecs = new ArrayList<>();
   public boolean libsWithSources = true;
   public boolean importSourceDepsAsJars;
+  public boolean useExportCache;
+  public boolean parallelResolve;
+  public int exportShards = 1;
 
 
   /**
@@ -59,7 +62,10 @@ public class PantsProjectSettings extends ExternalProjectSettings implements Pan
            && Objects.equals(libsWithSources, other.libsWithSources)
            && Objects.equals(myAllAvailableTargetSpecs, other.myAllAvailableTargetSpecs)
            && Objects.equals(mySelectedTargetSpecs, other.mySelectedTargetSpecs)
-           && Objects.equals(importSourceDepsAsJars, other.importSourceDepsAsJars);
+           && Objects.equals(importSourceDepsAsJars, other.importSourceDepsAsJars)
+           && Objects.equals(useExportCache, other.useExportCache)
+           && Objects.equals(parallelResolve, other.parallelResolve)
+           && exportShards == other.exportShards;
   }
 
   @NotNull
@@ -79,6 +85,9 @@ public class PantsProjectSettings extends ExternalProjectSettings implements Pan
       ((PantsProjectSettings) receiver).setAllAvailableTargetSpecs(getAllAvailableTargetSpecs());
       ((PantsProjectSettings) receiver).libsWithSources = libsWithSources;
       ((PantsProjectSettings) receiver).importSourceDepsAsJars = importSourceDepsAsJars;
+      ((PantsProjectSettings) receiver).useExportCache = useExportCache;
+      ((PantsProjectSettings) receiver).parallelResolve = parallelResolve;
+      ((PantsProjectSettings) receiver).exportShards = exportShards;
     }
   }
 
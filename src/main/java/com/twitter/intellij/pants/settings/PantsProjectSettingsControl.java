@@ -63,6 +63,9 @@ public class PantsProjectSettingsControl extends AbstractExternalProjectSettings
 
   private final JBCheckBox myLibsWithSourcesCheckBox = new JBCheckBox(PantsBundle.message("pants.settings.text.with.sources.and.docs"), true);
   private final JBCheckBox myImportSourceDepsAsJarsCheckBox = new JBCheckBox(PantsBundle.message("pants.settings.text.import.deps.as.jars"));
+  private final JBCheckBox myUseExportCacheCheckBox = new JBCheckBox(PantsBundle.message("pants.settings.text.use.export.cache"));
+  private final JBCheckBox myParallelResolveCheckBox = new JBCheckBox(PantsBundle.message("pants.settings.text.parallel.resolve"));
+  private final JSpinner myExportShardsSpinner = new JSpinner(new SpinnerNumberModel(1, 1, 32, 1));
 
   @VisibleForTesting
   protected Set<String> errors = new HashSet<>();
@@ -80,15 +83,25 @@ public class PantsProjectSettingsControl extends AbstractExternalProjectSettings
     PantsProjectSettings initialSettings = getInitialSettings();
     myLibsWithSourcesCheckBox.setSelected(initialSettings.libsWithSources);
     myImportSourceDepsAsJarsCheckBox.setSelected(initialSettings.importSourceDepsAsJars);
+    myUseExportCacheCheckBox.setSelected(initialSettings.useExportCache);
+    myParallelResolveCheckBox.setSelected(initialSettings.parallelResolve);
+    myExportShardsSpinner.setValue(initialSettings.exportShards);
 
     myTargetSpecsBox.setItems(initialSettings.getAllAvailableTargetSpecs(), x -> x);
     initialSettings.getSelectedTargetSpecs().forEach(spec -> myTargetSpecsBox.setItemSelected(spec, true));
 
     insertNameFieldBeforeProjectPath(content);
 
+    JPanel exportShardsPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 0, 0));
+    exportShardsPanel.add(new JBLabel(PantsBundle.message("pants.settings.text.export.shards")));
+    exportShardsPanel.add(myExportShardsSpinner);
+
     List<JComponent> boxes = ContainerUtil.newArrayList(
       myLibsWithSourcesCheckBox,
       myImportSourceDepsAsJarsCheckBox,
+      myUseExportCacheCheckBox,
+      myParallelResolveCheckBox,
+      exportShardsPanel,
       new JBLabel(PantsBundle.message("pants.settings.text.targets")),
       new JBScrollPane(myTargetSpecsBox)
     );
@@ -130,6 +143,9 @@ public class PantsProjectSettingsControl extends AbstractExternalProjectSettings
     );
 
     newSettings.setProjectName(myNameField.getText());
+    newSettings.useExportCache = myUseExportCacheCheckBox.isSelected();
+    newSettings.parallelResolve = myParallelResolveCheckBox.isSelected();
+    newSettings.exportShards = (Integer) myExportShardsSpinner.getValue();
     return !newSettings.equals(getInitialSettings());
   }
 
@@ -265,6 +281,9 @@ public class PantsProjectSettingsControl extends AbstractExternalProjectSettings
     settings.setAllAvailableTargetSpecs(getAllTargetSpecsFromBoxes());
     settings.libsWithSources = myLibsWithSourcesCheckBox.isSelected();
     settings.importSourceDepsAsJars = myImportSourceDepsAsJarsCheckBox.isSelected();
+    settings.useExportCache = myUseExportCacheCheckBox.isSelected();
+    settings.parallelResolve = myParallelResolveCheckBox.isSelected();
+    settings.exportShards = (Integer) myExportShardsSpinner.getValue();
   }
 
   @NotNull
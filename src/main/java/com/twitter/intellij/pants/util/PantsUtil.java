@@ -655,6 +655,17 @@ public class PantsUtil {
     );
   }
 
+  /**
+   * Maps every item, on the common fork-join pool if `parallel` is set.
+   * The result is in the order of `items` either way, so callers can attach it to a {@link DataNode} tree
+   * deterministically on a single thread afterwards.
+   */
+  @NotNull
+  public static <T, R> List<R> mapInOrder(@NotNull List<T> items, boolean parallel, @NotNull java.util.function.Function<T, R> mapper) {
+    final Stream<T> stream = parallel ? items.parallelStream() : items.stream();
+    return stream.map(mapper).collect(Collectors.toList());
+  }
+
   /**
    * @param jdkPath path to IDEA Project JDK
    * @return --jvm-distributions-paths with the parameter if jdkPath is not null,